@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.benchmark;
+
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import de.fraunhofer.iosb.tc_lib.converter.DisModelConverter;
+import edu.nps.moves.dis.DetonationPdu;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of one munition detonation between its DIS and RPR representations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConversionBenchmark {
+
+    private static final int POOL_SIZE = 1000;
+
+    private List<MunitionDetonation> munitionDetonations;
+    private List<DetonationPdu> pdus;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        munitionDetonations = SyntheticFad.load(POOL_SIZE);
+        pdus = SyntheticFad.toPdus(munitionDetonations);
+    }
+
+    @Benchmark
+    public MunitionDetonation disMunitionDetonationToRpr() {
+        next = (next + 1) % POOL_SIZE;
+        return DisModelConverter.disMunitionDetonationToRpr(pdus.get(next));
+    }
+
+    @Benchmark
+    public DetonationPdu rprMunitionDetonationToDIS() {
+        next = (next + 1) % POOL_SIZE;
+        return DisModelConverter.rprMunitionDetonationToDIS(munitionDetonations.get(next));
+    }
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.benchmark;
+
+import ca.drdc.ivct.fom.utils.MunitionDetonationCSVReader;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Loading of a FAD and its articulated parts file through the CSV reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FadLoadingBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int fadSize;
+
+    private Path directory;
+    private List<URL> fadUrls;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("synthetic-fad");
+        fadUrls = SyntheticFad.write(directory, fadSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (Path file : Files.list(directory).collect(Collectors.toList())) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public List<MunitionDetonation> loadCSVFileToMunitionDetonationList() {
+        return MunitionDetonationCSVReader.loadCSVFileToMunitionDetonationList(fadUrls);
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.benchmark;
+
+import ca.drdc.ivct.fom.utils.MunitionDetonationCSVReader;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import de.fraunhofer.iosb.tc_lib.converter.DisModelConverter;
+import edu.nps.moves.dis.DetonationPdu;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Writes synthetic FAD files in the testcase CSV format, so the benchmarks need no exercise data.
+ */
+final class SyntheticFad {
+
+    private static final String HEADER = "WorldLocationLat,WorldLocationLong,WorldLocationHeight,DetonationResultCode,"
+            + "EventId,EventCount,FiringObjectId,HeadingPitchSpeed,FuseType,MunitionObjectId,MunitionType,"
+            + "QuantityFired,RateOfFire,RelativePositionX,RelativePositionY,RelativePositionZ,TargetObjectId,"
+            + "WarheadType,ArticulatedPartDataFile";
+
+    private static final String PARTS_HEADER = "ArticulatedParameterTypeDesignator,ArticulatedParameterChange,"
+            + "PartAttachedTo,ArticulatedParameterType,ArticulatedPartsType,ArticulatedPartsTypeMetric,"
+            + "ArticulatedPartsValue,AttachedPartsStation,AttachedPartsStoreType";
+
+    private static final String PARTS_FILE = "Synthetic_Parts01.csv";
+
+    /** Event counts per issuing application, kept below the maximum of a short */
+    private static final int EVENTS_PER_APPLICATION = 30000;
+
+    private SyntheticFad() {
+    }
+
+    /**
+     * Write a FAD of the given size and the articulated parts file its rows refer to.
+     *
+     * @param directory the directory of the files
+     * @param size number of munition detonations
+     * @return the URLs of the FAD and parts files
+     * @throws IOException if a file cannot be written
+     */
+    static List<URL> write(Path directory, int size) throws IOException {
+        Path fadFile = directory.resolve("Synthetic_" + size + ".csv");
+        try (Writer writer = Files.newBufferedWriter(fadFile, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (int i = 0; i < size; i++) {
+                int application = 1 + i / EVENTS_PER_APPLICATION;
+                int eventCount = 1 + i % EVENTS_PER_APPLICATION;
+                double latitude = -80 + (i % 1600) * 0.1;
+                double longitude = -170 + (i % 3400) * 0.1;
+                writer.write(latitude + "," + longitude + "," + (i % 3000) + ",1,51." + application + ","
+                        + eventCount + ",1.0.2,0.01:30:10,10,55.0.2,2.2.225.2.4.1,1,1,100,-200,0,2.9.22,1300,"
+                        + (i % 2 == 0 ? PARTS_FILE : "") + "\n");
+            }
+        }
+
+        Path partsFile = directory.resolve(PARTS_FILE);
+        try (Writer writer = Files.newBufferedWriter(partsFile, StandardCharsets.UTF_8)) {
+            writer.write(PARTS_HEADER + "\n0,0,0,2112,2112,0,0,,\n1,1,0,687,,,,687,2.2.225.2.4.1\n");
+        }
+        return Arrays.asList(fadFile.toUri().toURL(), partsFile.toUri().toURL());
+    }
+
+    /**
+     * @param size number of munition detonations
+     * @return a synthetic FAD loaded through the CSV reader
+     * @throws IOException if the files cannot be written
+     */
+    static List<MunitionDetonation> load(int size) throws IOException {
+        Path directory = Files.createTempDirectory("synthetic-fad");
+        try {
+            return MunitionDetonationCSVReader.loadCSVFileToMunitionDetonationList(write(directory, size));
+        } finally {
+            for (Path file : Files.list(directory).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * @param fad the munition detonations of a FAD
+     * @return the DetonationPdus a SuT following the FAD would send
+     */
+    static List<DetonationPdu> toPdus(List<MunitionDetonation> fad) {
+        return fad.stream().map(DisModelConverter::rprMunitionDetonationToDIS).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the thresholds of the default TcParam.json
+     */
+    static Map<String, Double> thresholds() {
+        Map<String, Double> thresholds = new HashMap<>();
+        thresholds.put("worldLocation", 0.001);
+        thresholds.put("orientation", 0.0001);
+        thresholds.put("velocity", 0.001);
+        thresholds.put("acceleration", 0.001);
+        thresholds.put("angularVelocity", 0.0001);
+        return thresholds;
+    }
+}
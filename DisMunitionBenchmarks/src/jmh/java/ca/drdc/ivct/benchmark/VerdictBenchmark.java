@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.benchmark;
+
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationCapture;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationCheckResult;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationPduCollector;
+import ca.drdc.ivct.tc_lib_md_integritycheck.MunitionDetonationComparator;
+import ca.drdc.ivct.tc_lib_md_integritycheck.MunitionDetonationMatcher;
+import edu.nps.moves.dis.DetonationPdu;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The performTest pipeline of TC_0001: conversion and matching of the received PDUs
+ * with the FAD, then comparison of every FAD entry with its match. With keyed matching,
+ * matchAndCompare at 100000 entries takes about four times as long as at 25000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VerdictBenchmark {
+
+    @Param({ "10", "1000", "10000", "25000", "100000" })
+    public int fadSize;
+
+    private List<MunitionDetonation> fad;
+    private List<DetonationPdu> receivedPdus;
+    private Map<String, Double> thresholds;
+    private MunitionDetonationMatcher preparedMatcher;
+
+    @Setup
+    public void setUp() throws IOException {
+        fad = SyntheticFad.load(fadSize);
+        receivedPdus = SyntheticFad.toPdus(fad);
+        thresholds = SyntheticFad.thresholds();
+        preparedMatcher = match();
+    }
+
+    /**
+     * Capture of every received PDU and keyed matching with the FAD.
+     */
+    @Benchmark
+    public MunitionDetonationMatcher match() {
+        MunitionDetonationMatcher matcher = new MunitionDetonationMatcher(fad, new DetonationCapture(Long.MAX_VALUE, null));
+        new DetonationPduCollector(() -> receivedPdus, matcher).drain();
+        return matcher;
+    }
+
+    /**
+     * Comparison of every FAD entry with its match, on all available processors.
+     */
+    @Benchmark
+    public List<DetonationCheckResult> compare() throws InterruptedException {
+        return new MunitionDetonationComparator(thresholds).compareAll(fad, preparedMatcher::getMatch, 0);
+    }
+
+    /**
+     * Comparison of every FAD entry with its match, on a single thread.
+     */
+    @Benchmark
+    public List<DetonationCheckResult> compareSingleThread() throws InterruptedException {
+        return new MunitionDetonationComparator(thresholds).compareAll(fad, preparedMatcher::getMatch, 1);
+    }
+
+    /**
+     * Comparison of every FAD entry with its match, with the spatial checks on primitive arrays.
+     */
+    @Benchmark
+    public List<DetonationCheckResult> comparePrimitive() throws InterruptedException {
+        return new MunitionDetonationComparator(thresholds, true).compareAll(fad, preparedMatcher::getMatch, 0);
+    }
+
+    /**
+     * The whole verdict phase.
+     */
+    @Benchmark
+    public List<DetonationCheckResult> matchAndCompare() throws InterruptedException {
+        MunitionDetonationMatcher matcher = match();
+        return new MunitionDetonationComparator(thresholds).compareAll(fad, matcher::getMatch, 0);
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.dis.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a line of a FAD CSV file into its values.
+ * <p>
+ * Values are separated by commas and trimmed. A value may be quoted, in which case it can
+ * hold commas and doubled quotes stand for a quote. The header and the rows of a file are
+ * split the same way, so that a column found by name holds the same value on every row.
+ */
+public final class CsvRow {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    private CsvRow() {
+    }
+
+    /**
+     * @param line a line of a CSV file, without its line terminator
+     * @return its values, trimmed and unquoted; an empty line has a single empty value
+     */
+    public static List<String> split(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != QUOTE) {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                    value.append(QUOTE);
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == SEPARATOR) {
+                values.add(wasQuoted ? value.toString() : value.toString().trim());
+                value.setLength(0);
+                wasQuoted = false;
+            } else if (c == QUOTE && value.toString().trim().isEmpty()) {
+                // Spaces before the opening quote are not part of the value
+                value.setLength(0);
+                quoted = true;
+                wasQuoted = true;
+            } else if (!wasQuoted) {
+                value.append(c);
+            } else if (!Character.isWhitespace(c)) {
+                // Text after the closing quote is kept, as a lenient reader would
+                value.append(c);
+            }
+        }
+        values.add(wasQuoted ? value.toString() : value.toString().trim());
+        return values;
+    }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.dis.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Reads back the datagrams recorded by a {@link DatagramRecordWriter}, in order.
+ * <p>
+ * The datagrams are read through a reused buffer, so each one is only valid until the
+ * next call to {@link #next()}. This class is not thread-safe.
+ */
+public class DatagramRecordReader implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatagramRecordReader.class);
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final long startEpochMillis;
+    private ByteBuffer datagram;
+    private long timestampMicros;
+    private boolean endOfFile;
+
+    /**
+     * @param file a recording file
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public DatagramRecordReader(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer.limit(0);
+        if (!fill(DatagramRecordWriter.HEADER_SIZE) || buffer.getInt() != DatagramRecordWriter.MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not a datagram recording");
+        }
+        short version = buffer.getShort();
+        if (version != DatagramRecordWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported version " + version + " of the datagram recording " + file);
+        }
+        startEpochMillis = buffer.getLong();
+    }
+
+    /**
+     * Make sure the buffer holds at least the given number of bytes.
+     *
+     * @return false if the end of the file comes first
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes && !endOfFile) {
+            endOfFile = channel.read(buffer) < 0;
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+
+    /**
+     * Move to the next datagram.
+     *
+     * @return false at the end of the recording
+     * @throws IOException if the file cannot be read
+     */
+    public boolean next() throws IOException {
+        if (!fill(DatagramRecordWriter.RECORD_HEADER_SIZE)) {
+            return endOfRecording();
+        }
+        int deltaMicros = buffer.getInt(buffer.position());
+        int length = buffer.getShort(buffer.position() + 4) & 0xFFFF;
+        if (!fill(DatagramRecordWriter.RECORD_HEADER_SIZE + length)) {
+            return endOfRecording();
+        }
+        buffer.position(buffer.position() + DatagramRecordWriter.RECORD_HEADER_SIZE);
+        datagram = buffer.slice();
+        datagram.limit(length);
+        buffer.position(buffer.position() + length);
+        timestampMicros += deltaMicros;
+        return true;
+    }
+
+    private boolean endOfRecording() {
+        if (buffer.hasRemaining()) {
+            logger.warn("Ignoring the {} bytes of a truncated record at the end of {}", buffer.remaining(), file);
+            buffer.position(buffer.limit());
+        }
+        datagram = null;
+        return false;
+    }
+
+    /**
+     * @return the current datagram, valid until the next call to {@link #next()}
+     */
+    public ByteBuffer getDatagram() {
+        return datagram;
+    }
+
+    /**
+     * @return the arrival time of the current datagram, in microseconds since the start of the recording
+     */
+    public long getTimestampMicros() {
+        return timestampMicros;
+    }
+
+    /**
+     * @return the wall clock time of the start of the recording, in epoch milliseconds
+     */
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * Hand every remaining datagram to a consumer, keeping their original spacing divided
+     * by a speed factor.
+     *
+     * @param speed multiple of real time, 0 or less for as fast as possible
+     * @param consumer receives each datagram, valid only during the call
+     * @return the number of datagrams replayed
+     * @throws IOException if the file cannot be read
+     * @throws InterruptedException if interrupted while waiting for the next datagram
+     */
+    public long replay(double speed, Consumer<ByteBuffer> consumer) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        long firstMicros = -1;
+        long count = 0;
+        while (next()) {
+            if (speed > 0) {
+                if (firstMicros < 0) {
+                    firstMicros = timestampMicros;
+                }
+                long dueNanos = startNanos + (long) (TimeUnit.MICROSECONDS.toNanos(timestampMicros - firstMicros) / speed);
+                long waitNanos;
+                while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+            consumer.accept(datagram);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
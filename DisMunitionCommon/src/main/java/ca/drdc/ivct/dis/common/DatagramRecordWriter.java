@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.dis.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records raw DIS datagrams to an append-only file, with their arrival time.
+ * <p>
+ * The file starts with the magic number "MDRC", a format version and the wall clock time
+ * of the start of the recording in epoch milliseconds. Each datagram follows as the
+ * microseconds elapsed since the previous one (int), its length (unsigned short) and its
+ * bytes. Records are buffered and only reach the file in whole, so a recording cut short
+ * by a crash can still be read up to its last flushed record.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class DatagramRecordWriter implements Closeable {
+
+    static final int MAGIC = 0x4D445243;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 4 + 2 + 8;
+    static final int RECORD_HEADER_SIZE = 4 + 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final long startNanos;
+    private long lastMicros;
+    private long recordCount;
+
+    /**
+     * Start a new recording, replacing any existing file.
+     *
+     * @param file the recording file
+     * @throws IOException if the file cannot be created
+     */
+    public DatagramRecordWriter(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        startNanos = System.nanoTime();
+        buffer.putInt(MAGIC).putShort(VERSION).putLong(System.currentTimeMillis());
+        flush();
+    }
+
+    /**
+     * Append a datagram stamped with the current time.
+     *
+     * @param datagram the datagram, its position is left unchanged
+     * @throws IOException if the recording cannot be written
+     */
+    public void write(ByteBuffer datagram) throws IOException {
+        int length = datagram.remaining();
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("Datagram of " + length + " bytes is too long to be recorded");
+        }
+        if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+            flush();
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        buffer.putInt((int) Math.min(Integer.MAX_VALUE, micros - lastMicros));
+        buffer.putShort((short) length);
+        buffer.put(datagram.duplicate());
+        lastMicros = micros;
+        recordCount++;
+    }
+
+    /**
+     * Write the buffered records to the file.
+     *
+     * @throws IOException if the recording cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return the number of datagrams recorded
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
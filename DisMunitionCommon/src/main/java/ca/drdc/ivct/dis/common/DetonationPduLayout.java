@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.dis.common;
+
+import edu.nps.moves.dis.DetonationPdu;
+import edu.nps.moves.dis.EventID;
+import edu.nps.moves.dis.Pdu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Byte offsets of the fields of an encoded DIS DetonationPdu (IEEE 1278.1, big endian)
+ * that can be read or patched in place.
+ */
+public final class DetonationPduLayout {
+
+    public static final int EXERCISE_ID_OFFSET = 1;
+    public static final int PDU_TYPE_OFFSET = 2;
+    public static final int TIMESTAMP_OFFSET = 4;
+    public static final int LENGTH_OFFSET = 8;
+    public static final int EVENT_SITE_OFFSET = 30;
+    public static final int EVENT_APPLICATION_OFFSET = 32;
+    public static final int EVENT_NUMBER_OFFSET = 34;
+
+    /**
+     * Smallest DetonationPdu, without articulation parameters.
+     */
+    public static final int MINIMUM_LENGTH = 104;
+
+    public static final int DETONATION_PDU_TYPE = 3;
+
+    private static final double TIMESTAMP_UNITS_PER_MILLISECOND = (1L << 31) / 3_600_000.0;
+    private static final double NANOS_PER_TIMESTAMP_UNIT = 3_600_000_000_000.0 / (1L << 31);
+
+    private DetonationPduLayout() {
+    }
+
+    /**
+     * @return the current DIS relative timestamp: time past the UTC hour in units of 3600/2^31 seconds, lowest bit cleared
+     */
+    public static int relativeTimestamp() {
+        // Epoch time, unlike local time, is not shifted by the time zone or daylight saving
+        long millisPastHour = System.currentTimeMillis() % 3_600_000L;
+        return (int) ((long) (millisPastHour * TIMESTAMP_UNITS_PER_MILLISECOND) << 1);
+    }
+
+    /**
+     * Encode a PDU once.
+     *
+     * @param pdu the PDU
+     * @return a direct buffer holding the encoded PDU, whose fields can be patched in place
+     */
+    public static ByteBuffer encode(Pdu pdu) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(pdu.getMarshalledSize());
+        pdu.marshal(buffer);
+        buffer.flip();
+        // The length field is only right if the PDU computed it before marshalling
+        buffer.putShort(LENGTH_OFFSET, (short) buffer.limit());
+        return buffer;
+    }
+
+    /**
+     * @param encodedPdu an encoded DetonationPdu, its position is left unchanged
+     * @return the decoded DetonationPdu
+     */
+    public static DetonationPdu decode(ByteBuffer encodedPdu) {
+        DetonationPdu pdu = new DetonationPdu();
+        pdu.unmarshal(encodedPdu.duplicate());
+        return pdu;
+    }
+
+    /**
+     * Pack an event identifier into a long: site in bits 32 to 47, application in bits 16 to 31
+     * and event number in bits 0 to 15.
+     *
+     * @param site site number of the issuing simulation
+     * @param application application number of the issuing simulation
+     * @param eventNumber event number
+     * @return the event key
+     */
+    public static long eventKey(int site, int application, int eventNumber) {
+        return (site & 0xFFFFL) << 32 | (application & 0xFFFFL) << 16 | (eventNumber & 0xFFFFL);
+    }
+
+    /**
+     * @param eventId a DIS event identifier
+     * @return its event key
+     */
+    public static long eventKey(EventID eventId) {
+        return eventKey(eventId.getSite(), eventId.getApplication(), eventId.getEventNumber());
+    }
+
+    /**
+     * Read the event key of an encoded DetonationPdu without decoding it.
+     *
+     * @param pdu an encoded DetonationPdu, at least {@value #EVENT_NUMBER_OFFSET} + 2 bytes long
+     * @return its event key
+     */
+    public static long eventKey(ByteBuffer pdu) {
+        int start = pdu.position();
+        return eventKey(pdu.getShort(start + EVENT_SITE_OFFSET), pdu.getShort(start + EVENT_APPLICATION_OFFSET),
+                pdu.getShort(start + EVENT_NUMBER_OFFSET));
+    }
+
+    /**
+     * @param eventKey an event key
+     * @return the site and application part of the key, which identifies the issuing simulation
+     */
+    public static int simulationOf(long eventKey) {
+        return (int) (eventKey >>> 16);
+    }
+
+    /**
+     * Read the DIS timestamp of an encoded PDU without decoding it.
+     *
+     * @param pdu an encoded PDU, its position is left unchanged
+     * @return its DIS timestamp: time past the hour in units of 3600/2^31 seconds, shifted left by one
+     *         bit, the lowest bit set for an absolute timestamp
+     */
+    public static int timestamp(ByteBuffer pdu) {
+        return pdu.getInt(pdu.position() + TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * @param timestampUnits a number of DIS timestamp units of 3600/2^31 seconds
+     * @return the same duration in nanoseconds
+     */
+    public static long timestampUnitsToNanos(long timestampUnits) {
+        return (long) (timestampUnits * NANOS_PER_TIMESTAMP_UNIT);
+    }
+
+    /**
+     * @param pdu an encoded PDU
+     * @param timestamp the DIS timestamp to write
+     */
+    public static void setTimestamp(ByteBuffer pdu, int timestamp) {
+        pdu.putInt(TIMESTAMP_OFFSET, timestamp);
+    }
+
+    /**
+     * @param pdu an encoded DetonationPdu
+     * @param application the application number of the event identifier to write, only the lowest
+     *            16 bits are kept
+     */
+    public static void setApplication(ByteBuffer pdu, int application) {
+        pdu.putShort(EVENT_APPLICATION_OFFSET, (short) application);
+    }
+
+    /**
+     * @param pdu an encoded DetonationPdu
+     * @param eventNumber the event number to write, only the lowest 16 bits are kept
+     */
+    public static void setEventNumber(ByteBuffer pdu, int eventNumber) {
+        pdu.putShort(EVENT_NUMBER_OFFSET, (short) eventNumber);
+    }
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.dis.common;
+
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import de.fraunhofer.iosb.tc_lib.converter.DisModelConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compiled binary form of a FAD, rebuilt automatically when one of its CSV files changes.
+ * <p>
+ * Parsing the FAD CSV files and their articulated parts files is replaced by a
+ * memory-mapped read of the munition detonations, each stored as an encoded DIS
+ * DetonationPdu. The cache file starts with the CRC32 of every source CSV file; it is
+ * used only if they all still match, otherwise it is rebuilt from the CSV files.
+ * <p>
+ * File layout (big endian):
+ * <pre>
+ * int    magic, int version
+ * int    source count, then per source: UTF url, long size, long crc32
+ * int    record count, then per record: unsigned short length, encoded DetonationPdu
+ * </pre>
+ */
+public class FadCache {
+
+    private static Logger logger = LoggerFactory.getLogger(FadCache.class);
+
+    private static final int MAGIC = 0x4D444644; // "MDFD"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".mdfad";
+
+    private final Path cacheDirectory;
+    private final FadLoader loader;
+
+    /**
+     * @param cacheDirectory directory of the compiled FAD files, created if needed
+     */
+    public FadCache(Path cacheDirectory) {
+        this(cacheDirectory, 0);
+    }
+
+    /**
+     * @param cacheDirectory directory of the compiled FAD files, created if needed
+     * @param loadParallelism number of CSV files parsed at once when compiling, 0 for the number of available processors
+     */
+    public FadCache(Path cacheDirectory, int loadParallelism) {
+        this.cacheDirectory = cacheDirectory;
+        this.loader = new FadLoader(loadParallelism);
+    }
+
+    /**
+     * Load the FAD as encoded DetonationPdus, from the compiled file when it is up to date.
+     *
+     * @param sources the FAD CSV files, including the articulated parts files
+     * @return read-only buffers holding one encoded DetonationPdu each, in FAD order
+     * @throws IOException if a source cannot be read or the compiled file cannot be written
+     */
+    public List<ByteBuffer> load(List<URL> sources) throws IOException {
+        List<SourceChecksum> checksums = new ArrayList<>(sources.size());
+        for (URL source : sources) {
+            checksums.add(SourceChecksum.of(source));
+        }
+
+        Path cacheFile = cacheDirectory.resolve(cacheName(sources));
+        if (Files.isRegularFile(cacheFile)) {
+            List<ByteBuffer> records = map(cacheFile, checksums);
+            if (records != null) {
+                logger.info("Loaded {} munition detonations from the compiled FAD {}", records.size(), cacheFile);
+                return records;
+            }
+            logger.info("The FAD CSV files changed since {} was compiled, rebuilding it", cacheFile);
+        }
+
+        compile(sources, checksums, cacheFile);
+        List<ByteBuffer> records = map(cacheFile, checksums);
+        if (records == null) {
+            throw new IOException("Compiled FAD " + cacheFile + " is unreadable");
+        }
+        return records;
+    }
+
+    /**
+     * @param sources the FAD CSV files
+     * @return the munition detonations of the FAD, decoded from the compiled file when it is up to date
+     * @throws IOException if a source cannot be read or the compiled file cannot be written
+     */
+    public List<MunitionDetonation> loadMunitionDetonations(List<URL> sources) throws IOException {
+        List<ByteBuffer> records = load(sources);
+        List<MunitionDetonation> fad = new ArrayList<>(records.size());
+        for (ByteBuffer record : records) {
+            fad.add(DisModelConverter.disMunitionDetonationToRpr(DetonationPduLayout.decode(record)));
+        }
+        return fad;
+    }
+
+    private static String cacheName(List<URL> sources) {
+        CRC32 crc = new CRC32();
+        for (URL source : sources) {
+            crc.update(source.toString().getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return String.format("fad-%08x-%d%s", crc.getValue(), sources.size(), EXTENSION);
+    }
+
+    /**
+     * Parse the CSV files and write the compiled FAD next to its final location, then move it in place.
+     */
+    private void compile(List<URL> sources, List<SourceChecksum> checksums, Path cacheFile) throws IOException {
+        long start = System.currentTimeMillis();
+        List<MunitionDetonation> fad = loader.load(sources);
+
+        Files.createDirectories(cacheDirectory);
+        Path temporaryFile = Files.createTempFile(cacheDirectory, "fad-", EXTENSION + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(checksums.size());
+            for (SourceChecksum checksum : checksums) {
+                output.writeUTF(checksum.url);
+                output.writeLong(checksum.size);
+                output.writeLong(checksum.crc);
+            }
+            output.writeInt(fad.size());
+            for (MunitionDetonation munitionDetonation : fad) {
+                ByteBuffer record = DetonationPduLayout.encode(DisModelConverter.rprMunitionDetonationToDIS(munitionDetonation));
+                byte[] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                output.writeShort(bytes.length);
+                output.write(bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Compiled {} munition detonations into {} in {} ms", fad.size(), cacheFile,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return the records of the compiled file, or null if it does not match the checksums or is corrupted
+     */
+    private static List<ByteBuffer> map(Path cacheFile, List<SourceChecksum> checksums) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != checksums.size()) {
+                return null;
+            }
+            for (SourceChecksum checksum : checksums) {
+                if (!checksum.url.equals(readUTF(buffer)) || buffer.getLong() != checksum.size
+                        || buffer.getLong() != checksum.crc) {
+                    return null;
+                }
+            }
+
+            int recordCount = buffer.getInt();
+            List<ByteBuffer> records = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                int length = buffer.getShort() & 0xFFFF;
+                ByteBuffer record = buffer.slice();
+                record.limit(length);
+                records.add(record.asReadOnlyBuffer());
+                buffer.position(buffer.position() + length);
+            }
+            return Collections.unmodifiableList(records);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            logger.warn("Compiled FAD {} is corrupted", cacheFile);
+            return null;
+        }
+    }
+
+    private static String readUTF(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        // Modified UTF-8 only differs from UTF-8 for NUL and supplementary characters, absent from URLs
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Size and CRC32 of the content of a FAD CSV file.
+     */
+    private static final class SourceChecksum {
+        private final String url;
+        private final long size;
+        private final long crc;
+
+        private SourceChecksum(String url, long size, long crc) {
+            this.url = url;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        static SourceChecksum of(URL source) throws IOException {
+            CRC32 crc = new CRC32();
+            long size = 0;
+            byte[] chunk = new byte[64 * 1024];
+            try (InputStream input = source.openStream()) {
+                int read;
+                while ((read = input.read(chunk)) > 0) {
+                    crc.update(chunk, 0, read);
+                    size += read;
+                }
+            }
+            return new SourceChecksum(source.toString(), size, crc.getValue());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.dis.common;
+
+import ca.drdc.ivct.fom.utils.MunitionDetonationCSVReader;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Loads the munition detonations of many FAD CSV files in parallel.
+ * <p>
+ * Each FAD file is handed to the CSV reader on its own, together with the articulated
+ * parts files its ArticulatedPartDataFile column refers to, and its munition detonations
+ * are stored at the index of the file. The result is in the order of the list, like a
+ * single call to the reader. Parts files are only parsed along with the FAD files that
+ * refer to them, and files without an EventId column are otherwise skipped.
+ */
+public class FadLoader {
+
+    private static Logger logger = LoggerFactory.getLogger(FadLoader.class);
+
+    private static final String EVENT_ID_COLUMN = "EventId";
+    private static final String PARTS_FILE_COLUMN = "ArticulatedPartDataFile";
+
+    private final int parallelism;
+
+    /**
+     * @param parallelism number of files loaded at once, 0 for the number of available processors
+     */
+    public FadLoader(int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param sources the FAD CSV files, including the articulated parts files
+     * @return the munition detonations of every FAD file, in the order of the list
+     * @throws IOException if a source cannot be read
+     */
+    public List<MunitionDetonation> load(List<URL> sources) throws IOException {
+        if (sources.size() <= 1 || parallelism == 1) {
+            return MunitionDetonationCSVReader.loadCSVFileToMunitionDetonationList(sources);
+        }
+        long start = System.currentTimeMillis();
+        Map<String, URL> sourcesByName = new HashMap<>();
+        for (URL source : sources) {
+            sourcesByName.putIfAbsent(fileName(source), source);
+        }
+
+        List<List<MunitionDetonation>> loaded = new ArrayList<>(Collections.nCopies(sources.size(), null));
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, sources.size()));
+        try {
+            // Each task sets the slot of its own file, which keeps the FAD in list order.
+            pool.submit(() -> IntStream.range(0, loaded.size()).parallel().forEach(i -> {
+                loaded.set(i, loadFadFile(sources.get(i), sourcesByName));
+            })).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Could not load the FAD", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the FAD", e);
+        } finally {
+            pool.shutdown();
+        }
+
+        int size = 0;
+        int fadFileCount = 0;
+        for (List<MunitionDetonation> fileFad : loaded) {
+            if (fileFad != null) {
+                size += fileFad.size();
+                fadFileCount++;
+            }
+        }
+        List<MunitionDetonation> fad = new ArrayList<>(size);
+        for (List<MunitionDetonation> fileFad : loaded) {
+            if (fileFad != null) {
+                fad.addAll(fileFad);
+            }
+        }
+        logger.info("Loaded {} munition detonations from {} FAD files in {} ms", fad.size(), fadFileCount,
+                System.currentTimeMillis() - start);
+        return fad;
+    }
+
+    /**
+     * @return the munition detonations of the file, or null if it is not a FAD file
+     */
+    private static List<MunitionDetonation> loadFadFile(URL source, Map<String, URL> sourcesByName) {
+        Set<String> references;
+        try {
+            references = readPartsReferences(source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (references == null) {
+            return null;
+        }
+        List<URL> fileSources = new ArrayList<>(1 + references.size());
+        fileSources.add(source);
+        for (String reference : references) {
+            URL partsFile = sourcesByName.get(reference);
+            if (partsFile != null) {
+                fileSources.add(partsFile);
+            } else {
+                logger.warn("Articulated parts file {} of {} is not in the FAD", reference, source);
+            }
+        }
+        return MunitionDetonationCSVReader.loadCSVFileToMunitionDetonationList(fileSources);
+    }
+
+    /**
+     * @return the names of the parts files a FAD file refers to, or null if the source is not a FAD file
+     */
+    private static Set<String> readPartsReferences(URL source) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(source.openStream(), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null) {
+                return null;
+            }
+            List<String> columns = CsvRow.split(header);
+            if (!columns.contains(EVENT_ID_COLUMN)) {
+                return null;
+            }
+            Set<String> references = new LinkedHashSet<>();
+            int partsColumn = columns.indexOf(PARTS_FILE_COLUMN);
+            if (partsColumn < 0) {
+                return references;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> values = CsvRow.split(line);
+                if (partsColumn < values.size() && !values.get(partsColumn).isEmpty()) {
+                    references.add(values.get(partsColumn));
+                }
+            }
+            return references;
+        }
+    }
+
+    private static String fileName(URL source) {
+        String path = source.getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.dis.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds, with power of two buckets from 256 ns to 8.6 s
+ * and one bucket for the longer ones.
+ * <p>
+ * Recording is lock-free and can be done from any thread while the histogram is read.
+ */
+public class LatencyHistogram {
+
+    private static final int FIRST_BUCKET_SHIFT = 8;
+
+    /** The last bucket holds everything above the upper bound of the one before it */
+    private static final int BUCKET_COUNT = 27;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * @param nanos a duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(1, nanos);
+        int bucket = Math.max(0, 64 - Long.numberOfLeadingZeros(value - 1) - FIRST_BUCKET_SHIFT);
+        counts.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+        sumNanos.add(value);
+    }
+
+    /**
+     * Record the time elapsed since a {@link System#nanoTime()} reading.
+     *
+     * @param startNanos the reading taken at the start
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the number of buckets
+     */
+    public int getBuckets() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * @param bucket a bucket index
+     * @return the inclusive upper bound of the bucket in nanoseconds, Long.MAX_VALUE for the last one
+     */
+    public long getUpperBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << (bucket + FIRST_BUCKET_SHIFT);
+    }
+
+    /**
+     * @param bucket a bucket index
+     * @return the number of durations recorded in the bucket
+     */
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of the durations recorded, in nanoseconds
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * @param percentile a percentile between 0 and 100
+     * @return the upper bound in nanoseconds of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return getUpperBound(i);
+            }
+        }
+        return getUpperBound(BUCKET_COUNT - 1);
+    }
+}
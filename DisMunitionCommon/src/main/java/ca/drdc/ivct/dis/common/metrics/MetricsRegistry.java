@@ -0,0 +1,355 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.dis.common.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Live counters, gauges and latency histograms of a running component.
+ * <p>
+ * Components keep their own counters; the registry only reads them through suppliers
+ * when the metrics are scraped, so nothing is added to the hot paths. The metrics are
+ * published as the attributes of one JMX MBean and in the Prometheus text format over
+ * HTTP at {@code /metrics}.
+ * <p>
+ * Counters also have a per second rate in JMX, computed between two successive reads
+ * at least a second apart. Prometheus computes its own rates from the totals.
+ */
+public class MetricsRegistry implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final String prefix;
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+    private ObjectName objectName;
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+
+    /**
+     * @param prefix prefix of the metric names, e.g. md_checker
+     */
+    public MetricsRegistry(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @param name name of a monotonic count, without the prefix and the _total suffix
+     * @param help description
+     * @param value current value
+     */
+    public synchronized void counter(String name, String help, LongSupplier value) {
+        metrics.put(name, new Counter(prefix + "_" + name, help, value));
+    }
+
+    /**
+     * @param name name of a value that can go up and down, without the prefix
+     * @param help description
+     * @param value current value
+     */
+    public synchronized void gauge(String name, String help, DoubleSupplier value) {
+        metrics.put(name, new Gauge(prefix + "_" + name, help, value));
+    }
+
+    /**
+     * @param name name of a duration distribution, without the prefix and the _seconds suffix
+     * @param help description
+     * @param histogram the histogram
+     */
+    public synchronized void histogram(String name, String help, LatencyHistogram histogram) {
+        metrics.put(name, new Histogram(prefix + "_" + name + "_seconds", help, histogram));
+    }
+
+    /**
+     * Register the metrics as the attributes of an MBean of the platform MBean server.
+     *
+     * @param name the object name, e.g. ca.drdc.ivct:type=IntegrityChecker
+     * @throws JMException if the MBean cannot be registered
+     */
+    public void publishJmx(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        objectName = new ObjectName(name);
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(new MetricsMBean(), objectName);
+    }
+
+    /**
+     * Serve the metrics in the Prometheus text format at {@code http://<host>:<port>/metrics}.
+     *
+     * @param port the TCP port
+     * @throws IOException if the port cannot be bound
+     */
+    public void startHttp(int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        httpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+        logger.info("Metrics available at http://localhost:{}/metrics", port);
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format
+     */
+    public synchronized String toPrometheus() {
+        StringWriter writer = new StringWriter();
+        for (Metric metric : metrics.values()) {
+            metric.writePrometheus(writer);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Unregister the MBean and stop the HTTP endpoint.
+     */
+    @Override
+    public void close() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+        if (httpExecutor != null) {
+            // The server does not shut down an executor it was given
+            httpExecutor.shutdownNow();
+            httpExecutor = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn("Could not unregister {}", objectName, e);
+            }
+            objectName = null;
+        }
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private abstract static class Metric {
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract void writePrometheus(StringWriter writer);
+
+        /** Add the JMX attributes of this metric, keyed by attribute name. */
+        abstract void addAttributes(Map<String, Object> attributes);
+
+        void writeHeader(StringWriter writer, String metricName, String type) {
+            writer.append("# HELP ").append(metricName).append(' ').append(help).append('\n');
+            writer.append("# TYPE ").append(metricName).append(' ').append(type).append('\n');
+        }
+    }
+
+    private static class Counter extends Metric {
+        private final LongSupplier value;
+        private long lastValue;
+        private long lastNanos = System.nanoTime();
+        private double rate;
+
+        Counter(String name, String help, LongSupplier value) {
+            super(name, help);
+            this.value = value;
+        }
+
+        @Override
+        void writePrometheus(StringWriter writer) {
+            writeHeader(writer, name + "_total", "counter");
+            writer.append(name).append("_total ").append(Long.toString(value.getAsLong())).append('\n');
+        }
+
+        @Override
+        void addAttributes(Map<String, Object> attributes) {
+            long current = value.getAsLong();
+            long now = System.nanoTime();
+            if (now - lastNanos >= NANOS_PER_SECOND) {
+                rate = (current - lastValue) * NANOS_PER_SECOND / (now - lastNanos);
+                lastValue = current;
+                lastNanos = now;
+            }
+            attributes.put(name + "_total", current);
+            attributes.put(name + "_per_second", rate);
+        }
+    }
+
+    private static class Gauge extends Metric {
+        private final DoubleSupplier value;
+
+        Gauge(String name, String help, DoubleSupplier value) {
+            super(name, help);
+            this.value = value;
+        }
+
+        @Override
+        void writePrometheus(StringWriter writer) {
+            writeHeader(writer, name, "gauge");
+            writer.append(name).append(' ').append(format(value.getAsDouble())).append('\n');
+        }
+
+        @Override
+        void addAttributes(Map<String, Object> attributes) {
+            attributes.put(name, value.getAsDouble());
+        }
+    }
+
+    private static class Histogram extends Metric {
+        private final LatencyHistogram histogram;
+
+        Histogram(String name, String help, LatencyHistogram histogram) {
+            super(name, help);
+            this.histogram = histogram;
+        }
+
+        @Override
+        void writePrometheus(StringWriter writer) {
+            writeHeader(writer, name, "histogram");
+            long cumulative = 0;
+            for (int i = 0; i < histogram.getBuckets(); i++) {
+                cumulative += histogram.getCount(i);
+                long upperBound = histogram.getUpperBound(i);
+                String le = upperBound == Long.MAX_VALUE ? "+Inf" : Double.toString(upperBound / NANOS_PER_SECOND);
+                writer.append(name).append("_bucket{le=\"").append(le).append("\"} ")
+                        .append(Long.toString(cumulative)).append('\n');
+            }
+            writer.append(name).append("_sum ").append(Double.toString(histogram.getSumNanos() / NANOS_PER_SECOND)).append('\n');
+            writer.append(name).append("_count ").append(Long.toString(cumulative)).append('\n');
+        }
+
+        @Override
+        void addAttributes(Map<String, Object> attributes) {
+            attributes.put(name + "_count", histogram.getCount());
+            attributes.put(name + "_p50", histogram.getPercentile(50) / NANOS_PER_SECOND);
+            attributes.put(name + "_p99", histogram.getPercentile(99) / NANOS_PER_SECOND);
+        }
+    }
+
+    /**
+     * Read-only view of the metrics, whose attribute set follows the metrics registered.
+     */
+    private class MetricsMBean implements DynamicMBean {
+
+        private Map<String, Object> readAttributes() {
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            synchronized (MetricsRegistry.this) {
+                for (Metric metric : metrics.values()) {
+                    metric.addAttributes(attributes);
+                }
+            }
+            return attributes;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = readAttributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Object> attributes = readAttributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                if (attributes.containsKey(name)) {
+                    list.add(new Attribute(name, attributes.get(name)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("The metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("The metrics have no operation");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributeInfos = new ArrayList<>();
+            for (Map.Entry<String, Object> attribute : readAttributes().entrySet()) {
+                attributeInfos.add(new MBeanAttributeInfo(attribute.getKey(), attribute.getValue().getClass().getName(),
+                        attribute.getKey(), true, false, false));
+            }
+            return new MBeanInfo(MetricsRegistry.class.getName(), "Live metrics of " + prefix,
+                    attributeInfos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.dis.common;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class CsvRowTest {
+
+    @Test
+    public void valuesAreTrimmed() {
+        assertEquals(Arrays.asList("a", "b", "", "c"), CsvRow.split(" a,b ,, c"));
+    }
+
+    @Test
+    public void quotedValuesKeepTheirCommasAndSpaces() {
+        assertEquals(Arrays.asList("MD0001_Parts01.csv", " x, y ", "say \"hi\""),
+                CsvRow.split(" \"MD0001_Parts01.csv\" ,\" x, y \",\"say \"\"hi\"\"\""));
+    }
+
+    @Test
+    public void trailingSeparatorEndsWithAnEmptyValue() {
+        assertEquals(Arrays.asList("a", ""), CsvRow.split("a,"));
+        assertEquals(Collections.singletonList(""), CsvRow.split(""));
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.dis.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DetonationPduLayoutTest {
+
+    @Test
+    public void eventKeyPacksEachField() {
+        long key = DetonationPduLayout.eventKey(0x1234, 0x5678, 0x9ABC);
+        assertEquals(0x1234_5678_9ABCL, key);
+        assertEquals(0x1234_5678, DetonationPduLayout.simulationOf(key));
+    }
+
+    @Test
+    public void eventKeyFieldsAreUnsigned() {
+        long key = DetonationPduLayout.eventKey(-1, -1, -1);
+        assertEquals(0xFFFF_FFFF_FFFFL, key);
+        assertEquals(0xFFFF_FFFF, DetonationPduLayout.simulationOf(key));
+        assertNotEquals(DetonationPduLayout.eventKey(1, 2, 3), DetonationPduLayout.eventKey(1, 3, 2));
+    }
+
+    @Test
+    public void fieldsAreReadFromTheBufferPosition() {
+        int start = 7;
+        ByteBuffer buffer = ByteBuffer.allocate(start + DetonationPduLayout.MINIMUM_LENGTH);
+        buffer.putInt(start + DetonationPduLayout.TIMESTAMP_OFFSET, 0x12345679);
+        buffer.putShort(start + DetonationPduLayout.EVENT_SITE_OFFSET, (short) 0xFFFE);
+        buffer.putShort(start + DetonationPduLayout.EVENT_APPLICATION_OFFSET, (short) 2);
+        buffer.putShort(start + DetonationPduLayout.EVENT_NUMBER_OFFSET, (short) 3);
+        buffer.position(start);
+
+        assertEquals(DetonationPduLayout.eventKey(0xFFFE, 2, 3), DetonationPduLayout.eventKey(buffer));
+        assertEquals(0x12345679, DetonationPduLayout.timestamp(buffer));
+        assertEquals(start, buffer.position());
+    }
+
+    @Test
+    public void fieldsArePatchedInPlace() {
+        ByteBuffer buffer = ByteBuffer.allocate(DetonationPduLayout.MINIMUM_LENGTH);
+        DetonationPduLayout.setTimestamp(buffer, 42);
+        DetonationPduLayout.setEventNumber(buffer, 0x1_0005);
+        DetonationPduLayout.setApplication(buffer, 0x1_0007);
+        assertEquals(42, DetonationPduLayout.timestamp(buffer));
+        assertEquals(DetonationPduLayout.eventKey(0, 7, 5), DetonationPduLayout.eventKey(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void timestampUnitsSpanAnHour() {
+        assertEquals(TimeUnit.HOURS.toNanos(1), DetonationPduLayout.timestampUnitsToNanos(1L << 31), 1);
+        assertEquals(1676, DetonationPduLayout.timestampUnitsToNanos(1));
+    }
+
+    @Test
+    public void relativeTimestampIsTimePastTheUtcHour() {
+        long before = System.currentTimeMillis() % 3_600_000L;
+        int timestamp = DetonationPduLayout.relativeTimestamp();
+        long after = System.currentTimeMillis() % 3_600_000L;
+        assertEquals(0, timestamp & 1);
+        long millis = TimeUnit.NANOSECONDS.toMillis(DetonationPduLayout.timestampUnitsToNanos(timestamp >>> 1));
+        if (before <= after) {
+            // Units are rounded down, which can lose a millisecond
+            assertTrue(millis + " past the hour", millis >= before - 1 && millis <= after);
+        }
+    }
+}
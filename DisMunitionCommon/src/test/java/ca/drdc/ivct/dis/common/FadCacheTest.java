@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.dis.common;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class FadCacheTest {
+
+    private static final String FAD_FILE = "MD0001.csv";
+    private static final int PARTS_FILE_COUNT = 9;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path fadDirectory;
+    private Path cacheDirectory;
+    private List<URL> sources;
+
+    @Before
+    public void copyFad() throws IOException {
+        fadDirectory = folder.newFolder("fad").toPath();
+        cacheDirectory = folder.getRoot().toPath().resolve("cache");
+        sources = new ArrayList<>();
+        sources.add(copy(FAD_FILE));
+        for (int i = 1; i <= PARTS_FILE_COUNT; i++) {
+            sources.add(copy(String.format("MD0001_Parts%02d.csv", i)));
+        }
+    }
+
+    private URL copy(String name) throws IOException {
+        Path target = fadDirectory.resolve(name);
+        try (InputStream input = FadCacheTest.class.getResourceAsStream("/fad/" + name)) {
+            assertNotNull(name, input);
+            Files.copy(input, target);
+        }
+        return target.toUri().toURL();
+    }
+
+    private Path cacheFile() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*.mdfad")) {
+            List<Path> cacheFiles = new ArrayList<>();
+            files.forEach(cacheFiles::add);
+            assertEquals(1, cacheFiles.size());
+            return cacheFiles.get(0);
+        }
+    }
+
+    private static List<byte[]> contentOf(List<ByteBuffer> records) {
+        List<byte[]> content = new ArrayList<>(records.size());
+        for (ByteBuffer record : records) {
+            byte[] bytes = new byte[record.remaining()];
+            record.duplicate().get(bytes);
+            content.add(bytes);
+        }
+        return content;
+    }
+
+    @Test
+    public void unchangedSourcesReuseTheCompiledFad() throws IOException {
+        List<ByteBuffer> compiled = new FadCache(cacheDirectory).load(sources);
+        assertFalse(compiled.isEmpty());
+        Path cacheFile = cacheFile();
+        byte[] compiledBytes = Files.readAllBytes(cacheFile);
+        long modified = Files.getLastModifiedTime(cacheFile).toMillis();
+
+        List<ByteBuffer> reloaded = new FadCache(cacheDirectory).load(sources);
+        assertEquals(modified, Files.getLastModifiedTime(cacheFile()).toMillis());
+        assertArrayEquals(compiledBytes, Files.readAllBytes(cacheFile()));
+        List<byte[]> expected = contentOf(compiled);
+        List<byte[]> actual = contentOf(reloaded);
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void editedSourceInvalidatesTheCompiledFad() throws IOException {
+        List<ByteBuffer> compiled = new FadCache(cacheDirectory).load(sources);
+        byte[] compiledBytes = Files.readAllBytes(cacheFile());
+
+        Path fadFile = fadDirectory.resolve(FAD_FILE);
+        String content = new String(Files.readAllBytes(fadFile), StandardCharsets.UTF_8);
+        assertTrue(content.contains("45.45435"));
+        Files.write(fadFile, content.replace("45.45435", "45.45436").getBytes(StandardCharsets.UTF_8));
+
+        List<ByteBuffer> recompiled = new FadCache(cacheDirectory).load(sources);
+        assertEquals(compiled.size(), recompiled.size());
+        assertFalse(Arrays.equals(compiledBytes, Files.readAllBytes(cacheFile())));
+    }
+
+    @Test
+    public void corruptedCompiledFadIsRebuilt() throws IOException {
+        List<ByteBuffer> compiled = new FadCache(cacheDirectory).load(sources);
+        Path cacheFile = cacheFile();
+        byte[] compiledBytes = Files.readAllBytes(cacheFile);
+        Files.write(cacheFile, Arrays.copyOf(compiledBytes, compiledBytes.length / 2));
+
+        List<ByteBuffer> rebuilt = new FadCache(cacheDirectory).load(sources);
+        assertEquals(compiled.size(), rebuilt.size());
+        assertArrayEquals(compiledBytes, Files.readAllBytes(cacheFile()));
+    }
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.dis;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the testcase PDUs periodically, each at its own time within the period.
+ * <p>
+ * The period is a timing wheel of one millisecond slots, built once: each send of each
+ * PDU is placed in the slot of its offset. A single thread walks the non-empty slots in
+ * order, sleeping until each one is due, and sends its PDUs back to back. Tens of
+ * thousands of individually timed sends therefore cost one array walk per period
+ * rather than one scheduled task each.
+ * <p>
+ * Rows without a send offset are either spread evenly over the period, so that the
+ * receivers are not hit by the whole testcase at once, or all sent at its start.
+ */
+public class CadenceScheduler {
+
+    private static Logger logger = LoggerFactory.getLogger(CadenceScheduler.class);
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "sut-cadence"));
+    private final EncodedPduSender sender;
+    private final List<ByteBuffer> pdus;
+    private final int slotCount;
+    private final LatencyHistogram lagHistogram = new LatencyHistogram();
+
+    /** Slot of each non-empty slot group, in increasing order */
+    private final int[] groupSlots;
+    /** Start of each group in {@link #entries}, plus the end of the last one */
+    private final int[] groupStarts;
+    /** Index of the PDU of each send, grouped by slot */
+    private final int[] entries;
+
+    private volatile boolean running;
+
+    /**
+     * @param sender the sender of the PDUs
+     * @param pdus the encoded testcase DetonationPdus
+     * @param timing the send timing of each PDU, in the same order, or null if none is given
+     * @param periodMillis the period in milliseconds
+     * @param spread true to spread the PDUs without a send offset over the period, false to send them at its start
+     */
+    public CadenceScheduler(EncodedPduSender sender, List<ByteBuffer> pdus, TestcaseTiming timing, long periodMillis,
+            boolean spread) {
+        this.sender = sender;
+        this.pdus = pdus;
+        this.slotCount = (int) Math.max(1, periodMillis);
+
+        int pduCount = pdus.size();
+        int sendCount = 0;
+        for (int i = 0; i < pduCount; i++) {
+            sendCount += timing == null ? 1 : timing.getRepeatCount(i);
+        }
+
+        // Place every send in its slot, counting sort style
+        int[] sendSlots = new int[sendCount];
+        int[] sendPdus = new int[sendCount];
+        int[] slotSizes = new int[slotCount];
+        int send = 0;
+        for (int i = 0; i < pduCount; i++) {
+            long offset = timing == null ? TestcaseTiming.UNSPECIFIED : timing.getSendOffset(i);
+            if (offset == TestcaseTiming.UNSPECIFIED) {
+                offset = spread ? (long) i * slotCount / pduCount : 0;
+            } else if (offset >= slotCount) {
+                logger.warn("Send offset {} ms of testcase row {} is beyond the period, wrapping it", offset, i + 1);
+            }
+            int repeatCount = timing == null ? 1 : timing.getRepeatCount(i);
+            for (int repeat = 0; repeat < repeatCount; repeat++) {
+                int slot = (int) ((offset + (long) repeat * slotCount / repeatCount) % slotCount);
+                sendSlots[send] = slot;
+                sendPdus[send] = i;
+                slotSizes[slot]++;
+                send++;
+            }
+        }
+
+        int groupCount = 0;
+        for (int size : slotSizes) {
+            if (size > 0) {
+                groupCount++;
+            }
+        }
+        groupSlots = new int[groupCount];
+        groupStarts = new int[groupCount + 1];
+        int[] slotGroups = new int[slotCount];
+        int group = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotSizes[slot] > 0) {
+                groupSlots[group] = slot;
+                groupStarts[group + 1] = groupStarts[group] + slotSizes[slot];
+                slotGroups[slot] = group;
+                group++;
+            }
+        }
+        entries = new int[sendCount];
+        int[] fill = new int[groupCount];
+        for (send = 0; send < sendCount; send++) {
+            int slotGroup = slotGroups[sendSlots[send]];
+            entries[groupStarts[slotGroup] + fill[slotGroup]++] = sendPdus[send];
+        }
+    }
+
+    /**
+     * Start sending, one period after the other.
+     */
+    public void start() {
+        logger.info("Sending {} PDUs every {} ms, in {} time slots", entries.length, slotCount, groupSlots.length);
+        running = true;
+        executor.execute(this::run);
+    }
+
+    /**
+     * Stop sending after the current slot, and wait for it to be sent.
+     */
+    public void stop() {
+        running = false;
+        // Interrupting wakes the sending thread up if it is waiting for the next slot
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.warn("The testcases are still being sent");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        long periodNanos = slotCount * TICK_NANOS;
+        try {
+            for (long cycle = 0; running; cycle++) {
+                long cycleStart = start + cycle * periodNanos;
+                for (int group = 0; group < groupSlots.length && running; group++) {
+                    long due = cycleStart + groupSlots[group] * TICK_NANOS;
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0 && running) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    if (!running) {
+                        break;
+                    }
+                    lagHistogram.recordSince(due);
+                    sendGroup(group);
+                }
+                if (groupSlots.length == 0) {
+                    LockSupport.parkNanos(cycleStart + periodNanos - System.nanoTime());
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Stopped sending the testcases", e);
+        }
+    }
+
+    private void sendGroup(int group) {
+        int timestamp = DetonationPduLayout.relativeTimestamp();
+        for (int entry = groupStarts[group]; entry < groupStarts[group + 1]; entry++) {
+            ByteBuffer pdu = pdus.get(entries[entry]);
+            DetonationPduLayout.setTimestamp(pdu, timestamp);
+            sender.send(pdu);
+        }
+    }
+
+    /**
+     * @return the lag between the planned and actual time of each slot
+     */
+    public LatencyHistogram getLagHistogram() {
+        return lagHistogram;
+    }
+}
@@ -16,17 +16,19 @@
  *******************************************************************************/
 package ca.drdc.ivct.dis;
 
+import ca.drdc.ivct.dis.common.DatagramRecordReader;
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.dis.common.FadCache;
+import ca.drdc.ivct.dis.common.FadLoader;
+import ca.drdc.ivct.dis.common.metrics.MetricsRegistry;
 import ca.drdc.ivct.dis.config.DisSutConfig;
-import ca.drdc.ivct.fom.utils.MunitionDetonationCSVReader;
-import ca.drdc.ivct.fom.utils.WeaponFireCSVReader;
 import de.fraunhofer.iosb.tc_lib.converter.DisModelConverter;
-import de.fraunhofer.iosb.tc_lib.dis.DisSender;
-import edu.nps.moves.dis.DetonationPdu;
-import edu.nps.moves.dis.FirePdu;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.List;
 import java.util.concurrent.Executors;
@@ -37,10 +39,11 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class DisMunitionSut {
 
-    private static final int PERIOD = 6;
     private static Logger logger = LoggerFactory.getLogger(DisMunitionSut.class);
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private volatile LoadGenerator loadGenerator;
+    private volatile CadenceScheduler cadenceScheduler;
 
     public static void main(String[] args) {
         DisSutConfig config = new DisSutConfig("/config/config.properties");
@@ -52,17 +55,147 @@ public class DisMunitionSut {
     }
 
     public DisMunitionSut(DisSutConfig config) throws IOException, ParseException {
-        DisSender sender = new DisSender(config.getBroadCastNetwork().getIpAdress(),
+        EncodedPduSender sender = new EncodedPduSender(config.getBroadCastNetwork().getIpAdress(),
                 config.getBroadCastNetwork().getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(sender), "sut-shutdown"));
 
-        List<DetonationPdu> pdus = MunitionDetonationCSVReader.loadCSVFileToMunitionDetonationList(config.getTestcaseList()).stream()
+        MetricsRegistry metrics = null;
+        if (config.isMetrics()) {
+            metrics = new MetricsRegistry("md_sut");
+            metrics.counter("pdus_sent", "DetonationPdus sent", sender::getSentCount);
+            metrics.counter("send_errors", "DetonationPdus that could not be sent", sender::getSendErrors);
+            metrics.histogram("send", "Time spent sending one datagram", sender.getSendLatency());
+        }
+
+        if (config.getMode() == DisSutConfig.Mode.REPLAY) {
+            if (metrics != null) {
+                publishMetrics(metrics, config);
+            }
+            scheduler.execute(() -> {
+                replay(config, sender);
+                close(sender);
+            });
+            scheduler.shutdown();
+            return;
+        }
+
+        // Encode each PDU once, only the timestamp changes from one send to the next
+        List<ByteBuffer> pdus = loadEncodedPdus(config);
+
+        if (config.getMode() == DisSutConfig.Mode.LOAD) {
+            loadGenerator = new LoadGenerator(sender, pdus, config.getLoadRate(), config.getLoadBurstSize(),
+                    config.getLoadDuration(), config.getLoadFirstEventNumber());
+            if (metrics != null) {
+                metrics.histogram("load_lag", "Lag between the planned and actual start of a burst",
+                        loadGenerator.getLagHistogram());
+                publishMetrics(metrics, config);
+            }
+            loadGenerator.start();
+            return;
+        }
+
+        cadenceScheduler = new CadenceScheduler(sender, pdus, loadTiming(config, pdus.size()),
+                SECONDS.toMillis(config.getPeriod()), config.isSpreadSends());
+        if (metrics != null) {
+            metrics.histogram("cadence_lag", "Lag between the planned and actual time of a send slot",
+                    cadenceScheduler.getLagHistogram());
+            publishMetrics(metrics, config);
+        }
+        cadenceScheduler.start();
+    }
+
+    /**
+     * Read the send timing of the testcase rows.
+     *
+     * @return the timing, or null if none is given or it does not match the PDUs
+     */
+    private static TestcaseTiming loadTiming(DisSutConfig config, int pduCount) {
+        try {
+            TestcaseTiming timing = new TestcaseTiming(config.getTestcaseList());
+            if (!timing.isSpecified()) {
+                return null;
+            }
+            if (timing.size() != pduCount) {
+                logger.warn("Found the send timing of {} rows for {} PDUs, ignoring it", timing.size(), pduCount);
+                return null;
+            }
+            return timing;
+        } catch (IOException e) {
+            logger.warn("Could not read the send timing of the testcases, ignoring it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Send the datagrams of a recording as they were received, with their original spacing.
+     */
+    private static void replay(DisSutConfig config, EncodedPduSender sender) {
+        try (DatagramRecordReader reader = new DatagramRecordReader(config.getReplayFile())) {
+            logger.info("Replaying {} at {} times real time", config.getReplayFile(), config.getReplaySpeed());
+            long count = reader.replay(config.getReplaySpeed(), sender::send);
+            logger.info("Replayed {} PDUs, {} could not be sent", count, sender.getSendErrors());
+        } catch (IOException e) {
+            logger.error("Could not replay {}", config.getReplayFile(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop sending, then release the socket.
+     */
+    private void shutdown(EncodedPduSender sender) {
+        if (loadGenerator != null) {
+            loadGenerator.stop();
+        }
+        if (cadenceScheduler != null) {
+            cadenceScheduler.stop();
+        }
+        close(sender);
+    }
+
+    private static void close(EncodedPduSender sender) {
+        try {
+            sender.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the PDU sender", e);
+        }
+    }
+
+    private static void publishMetrics(MetricsRegistry metrics, DisSutConfig config) {
+        try {
+            metrics.publishJmx("ca.drdc.ivct:type=DisMunitionSut");
+            if (config.getMetricsPort() > 0) {
+                metrics.startHttp(config.getMetricsPort());
+            }
+        } catch (JMException | IOException e) {
+            logger.warn("Could not publish the metrics", e);
+        }
+    }
+
+    /**
+     * Load the testcases as encoded DetonationPdus that can be patched in place.
+     */
+    private static List<ByteBuffer> loadEncodedPdus(DisSutConfig config) throws IOException {
+        if (config.isFadCache()) {
+            try {
+                return new FadCache(config.getFadCacheDirectory()).load(config.getTestcaseList()).stream()
+                        .map(DisMunitionSut::copyToDirectBuffer)
+                        .collect(Collectors.toList());
+            } catch (IOException e) {
+                logger.warn("Could not use the compiled testcases, parsing the CSV files instead", e);
+            }
+        }
+        return new FadLoader(0).load(config.getTestcaseList()).stream()
                 .map(DisModelConverter::rprMunitionDetonationToDIS)
+                .map(DetonationPduLayout::encode)
                 .collect(Collectors.toList());
+    }
 
-//        System.out.println(pdus);
-        scheduler.scheduleAtFixedRate(()->
-            pdus.stream().forEach(sender::sendPdu),
-        0, PERIOD, SECONDS);
-        
+    private static ByteBuffer copyToDirectBuffer(ByteBuffer encodedPdu) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(encodedPdu.remaining());
+        copy.put(encodedPdu.duplicate());
+        copy.flip();
+        return copy;
     }
 }
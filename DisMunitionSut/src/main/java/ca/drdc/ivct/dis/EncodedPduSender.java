@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.dis;
+
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Sends PDUs that were encoded once into direct byte buffers.
+ * <p>
+ * Unlike {@link de.fraunhofer.iosb.tc_lib.dis.DisSender}, the PDUs are not marshalled
+ * again at each send: each buffer is sent as is, one datagram per PDU, over a single reused
+ * datagram channel. Callers patch the fields that change, such as the timestamp, in the
+ * buffer before sending it. This class is not thread-safe.
+ */
+public class EncodedPduSender implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(EncodedPduSender.class);
+
+    private final DatagramChannel channel;
+    private final InetSocketAddress destination;
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private volatile long sentCount;
+    private volatile long sendErrors;
+
+    /**
+     * @param ipAddress destination address, usually a broadcast address
+     * @param port destination port
+     * @throws IOException if the datagram channel cannot be opened
+     */
+    public EncodedPduSender(String ipAddress, int port) throws IOException {
+        this.destination = new InetSocketAddress(ipAddress, port);
+        this.channel = DatagramChannel.open();
+        this.channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+    }
+
+    /**
+     * Send one encoded PDU as is.
+     *
+     * @param pdu the encoded PDU, its position and limit are left unchanged
+     */
+    public void send(ByteBuffer pdu) {
+        // The channel consumes the buffer, rewinding it is cheaper than sending a duplicate
+        int position = pdu.position();
+        try {
+            long start = System.nanoTime();
+            channel.send(pdu, destination);
+            sendLatency.recordSince(start);
+            sentCount++;
+        } catch (IOException e) {
+            if (sendErrors++ == 0) {
+                logger.error("Could not send PDU to {}", destination, e);
+            }
+        } finally {
+            pdu.position(position);
+        }
+    }
+
+    /**
+     * @return the number of PDUs sent
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * @return the time spent in each datagram send
+     */
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    /**
+     * @return the number of PDUs that could not be sent
+     */
+    public long getSendErrors() {
+        return sendErrors;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.dis;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends DetonationPdus at a target rate to stress the integrity checker and the DIS network.
+ * <p>
+ * The PDUs are sent in bursts of a fixed size, at the interval that gives the target
+ * rate. Each PDU sent is one of the encoded testcase PDUs, taken in turn, patched in
+ * place with a new event number and the current timestamp. The achieved rate and the scheduling lag are logged every second.
+ * <p>
+ * The event number is only 16 bits and wraps every 65536 PDUs, less than a second at high
+ * rates. On each wrap the application number of every template is moved past the range the
+ * templates span, so that the event identifiers stay unique per site for 65536 wraps.
+ */
+public class LoadGenerator {
+
+    private static Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final int EVENT_NUMBER_COUNT = 1 << 16;
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final EncodedPduSender sender;
+    private final List<ByteBuffer> templates;
+    private final int burstSize;
+    private final long burstIntervalNanos;
+    private final long durationNanos;
+    private final LatencyHistogram lagHistogram = new LatencyHistogram();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    private final int[] templateApplications;
+    private final int applicationStride;
+
+    private int nextTemplate;
+    private int nextEventNumber;
+    private int applicationOffset;
+    private long start;
+    private long burstCount;
+
+    private long sent;
+    private long sentAtLastReport;
+    private long lastReport;
+    private long maximumLagNanos;
+    private long totalLagNanos;
+    private long lagSamples;
+
+    /**
+     * @param sender the sender of the PDUs
+     * @param templates the encoded testcase DetonationPdus the generated ones are made from
+     * @param rate target number of PDUs per second
+     * @param burstSize number of PDUs sent back to back
+     * @param durationSec duration of the load in seconds, 0 for no limit
+     * @param firstEventNumber event number of the first generated PDU
+     */
+    public LoadGenerator(EncodedPduSender sender, List<ByteBuffer> templates, int rate, int burstSize, int durationSec,
+            int firstEventNumber) {
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("No testcase PDU to generate the load from");
+        }
+        this.sender = sender;
+        this.templates = templates;
+        this.burstSize = Math.max(1, burstSize);
+        this.burstIntervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(this.burstSize) / Math.max(1, rate));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSec);
+        this.nextEventNumber = firstEventNumber % EVENT_NUMBER_COUNT;
+
+        templateApplications = new int[templates.size()];
+        int minimumApplication = Integer.MAX_VALUE;
+        int maximumApplication = 0;
+        for (int i = 0; i < templateApplications.length; i++) {
+            int application = (int) (DetonationPduLayout.eventKey(templates.get(i)) >>> 16) & 0xFFFF;
+            templateApplications[i] = application;
+            minimumApplication = Math.min(minimumApplication, application);
+            maximumApplication = Math.max(maximumApplication, application);
+        }
+        this.applicationStride = maximumApplication - minimumApplication + 1;
+    }
+
+    /**
+     * Start sending the load.
+     */
+    public void start() {
+        logger.info("Generating {} PDUs/s in bursts of {} every {} us", TimeUnit.SECONDS.toNanos(burstSize) / burstIntervalNanos,
+                burstSize, TimeUnit.NANOSECONDS.toMicros(burstIntervalNanos));
+        start = System.nanoTime();
+        lastReport = start;
+        scheduler.scheduleAtFixedRate(this::sendBurst, 0, burstIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop sending the load after the current burst, wait for it to be sent and log the final
+     * rate. Only the first call has an effect.
+     */
+    public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.warn("The load is still being sent");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report(System.nanoTime());
+    }
+
+    private void sendBurst() {
+        try {
+            long now = System.nanoTime();
+            if (durationNanos > 0 && now - start >= durationNanos) {
+                // Stopping from the sending thread itself, there is no burst to wait for
+                if (stopped.compareAndSet(false, true)) {
+                    scheduler.shutdown();
+                    report(now);
+                }
+                return;
+            }
+
+            // Lag between the planned start of this burst and its actual start
+            long lag = now - (start + burstCount * burstIntervalNanos);
+            burstCount++;
+            maximumLagNanos = Math.max(maximumLagNanos, lag);
+            totalLagNanos += lag;
+            lagSamples++;
+            lagHistogram.record(lag);
+
+            int timestamp = DetonationPduLayout.relativeTimestamp();
+            for (int i = 0; i < burstSize; i++) {
+                ByteBuffer pdu = nextPdu();
+                DetonationPduLayout.setTimestamp(pdu, timestamp);
+                sender.send(pdu);
+            }
+            sent += burstSize;
+
+            if (now - lastReport >= TimeUnit.SECONDS.toNanos(1)) {
+                report(now);
+            }
+        } catch (RuntimeException e) {
+            // An exception would silently cancel the periodic task
+            logger.error("Could not send the load", e);
+        }
+    }
+
+    /**
+     * @return the lag between the planned and actual start of each burst
+     */
+    public LatencyHistogram getLagHistogram() {
+        return lagHistogram;
+    }
+
+    private ByteBuffer nextPdu() {
+        ByteBuffer pdu = templates.get(nextTemplate);
+        DetonationPduLayout.setApplication(pdu, templateApplications[nextTemplate] + applicationOffset);
+        DetonationPduLayout.setEventNumber(pdu, nextEventNumber);
+        nextTemplate = (nextTemplate + 1) % templates.size();
+        nextEventNumber = (nextEventNumber + 1) % EVENT_NUMBER_COUNT;
+        if (nextEventNumber == 0) {
+            applicationOffset += applicationStride;
+        }
+        return pdu;
+    }
+
+    private void report(long now) {
+        double elapsedSec = (now - lastReport) / 1e9;
+        if (elapsedSec > 0) {
+            logger.info("Sent {} PDUs/s ({} in total), scheduling lag mean {} us, max {} us",
+                    Math.round((sent - sentAtLastReport) / elapsedSec), sent,
+                    lagSamples == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLagNanos / lagSamples),
+                    TimeUnit.NANOSECONDS.toMicros(maximumLagNanos));
+        }
+        sentAtLastReport = sent;
+        lastReport = now;
+        maximumLagNanos = 0;
+        totalLagNanos = 0;
+        lagSamples = 0;
+    }
+}
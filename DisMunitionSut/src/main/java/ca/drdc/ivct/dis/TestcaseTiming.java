@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.dis;
+
+import ca.drdc.ivct.dis.common.CsvRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Optional send timing of each munition detonation of the testcases.
+ * <p>
+ * The testcase CSV files may have a {@code SendOffsetMs} column, the time in milliseconds
+ * from the start of each period at which the row is sent, and a {@code RepeatCount}
+ * column, the number of times the row is sent in each period. Empty or absent values
+ * leave the row to be spread evenly over the period and sent once. The lines are split
+ * by {@link CsvRow}, so that quoted values holding commas keep the columns aligned, and the
+ * columns are found by header name; rows are numbered across the files in the order of the list,
+ * like the munition detonations returned by the CSV reader. The articulated parts files
+ * have no EventId column and are skipped.
+ */
+public class TestcaseTiming {
+
+    private static Logger logger = LoggerFactory.getLogger(TestcaseTiming.class);
+
+    private static final String SEND_OFFSET_COLUMN = "SendOffsetMs";
+    private static final String REPEAT_COUNT_COLUMN = "RepeatCount";
+    private static final String EVENT_ID_COLUMN = "EventId";
+
+    /** No send offset given */
+    public static final long UNSPECIFIED = -1;
+
+    private long[] sendOffsets = new long[64];
+    private int[] repeatCounts = new int[64];
+    private int size;
+    private boolean specified;
+
+    /**
+     * @param testcases the testcase CSV files, including the articulated parts files
+     * @throws IOException if a file cannot be read
+     */
+    public TestcaseTiming(List<URL> testcases) throws IOException {
+        for (URL testcase : testcases) {
+            read(testcase);
+        }
+    }
+
+    private void read(URL testcase) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(testcase.openStream(), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null) {
+                return;
+            }
+            List<String> columns = CsvRow.split(header);
+            if (!columns.contains(EVENT_ID_COLUMN)) {
+                return;
+            }
+            int offsetColumn = columns.indexOf(SEND_OFFSET_COLUMN);
+            int repeatColumn = columns.indexOf(REPEAT_COUNT_COLUMN);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                List<String> values = CsvRow.split(line);
+                add(parse(values, offsetColumn, UNSPECIFIED, testcase), (int) parse(values, repeatColumn, 1, testcase));
+            }
+        }
+    }
+
+    private long parse(List<String> values, int column, long defaultValue, URL testcase) {
+        if (column < 0 || column >= values.size() || values.get(column).isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            long value = Long.parseLong(values.get(column));
+            specified = true;
+            return value < 0 ? defaultValue : value;
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid send timing {} in row {} of {}", values.get(column), size + 1, testcase);
+            return defaultValue;
+        }
+    }
+
+    private void add(long sendOffset, int repeatCount) {
+        if (size == sendOffsets.length) {
+            sendOffsets = Arrays.copyOf(sendOffsets, size * 2);
+            repeatCounts = Arrays.copyOf(repeatCounts, size * 2);
+        }
+        sendOffsets[size] = sendOffset;
+        repeatCounts[size] = Math.max(1, repeatCount);
+        size++;
+    }
+
+    /**
+     * @return the number of munition detonation rows read
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if at least one row has a send offset or repeat count
+     */
+    public boolean isSpecified() {
+        return specified;
+    }
+
+    /**
+     * @param row a munition detonation row, across all files
+     * @return its send offset in milliseconds from the start of the period, or {@link #UNSPECIFIED}
+     */
+    public long getSendOffset(int row) {
+        return sendOffsets[row];
+    }
+
+    /**
+     * @param row a munition detonation row, across all files
+     * @return the number of times it is sent in each period
+     */
+    public int getRepeatCount(int row) {
+        return repeatCounts[row];
+    }
+}
@@ -22,6 +22,8 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
@@ -37,6 +39,31 @@ public class DisSutConfig {
     private static final String TEST_CASE_DIR = "testcaseDir";
     private static final String BROADCAST_NETWORK = "broadCastNetwork";
     private static final String DEFAULT_TEST_CASE_DIR = "testcases";
+    private static final String MODE = "mode";
+    private static final String PERIOD = "period";
+    private static final String SPREAD_SENDS = "spreadSends";
+    private static final String LOAD_RATE = "loadRate";
+    private static final String LOAD_BURST_SIZE = "loadBurstSize";
+    private static final String LOAD_DURATION = "loadDuration";
+    private static final String LOAD_FIRST_EVENT_NUMBER = "loadFirstEventNumber";
+    private static final String FAD_CACHE = "fadCache";
+    private static final String FAD_CACHE_DIRECTORY = "fadCacheDirectory";
+    private static final String METRICS = "metrics";
+    private static final String METRICS_PORT = "metricsPort";
+    private static final String REPLAY_FILE = "replayFile";
+    private static final String REPLAY_SPEED = "replaySpeed";
+
+    /**
+     * Sending modes of the Sut
+     */
+    public enum Mode {
+        /** send every testcase PDU at each period */
+        PERIODIC,
+        /** send copies of the testcase PDUs with new event numbers at a target rate */
+        LOAD,
+        /** send the datagrams of a recording made by the integrity checker */
+        REPLAY
+    }
 
     /**
      * host to listen for
@@ -53,6 +80,71 @@ public class DisSutConfig {
      */
     private ArrayList<URL> testcaseList;
 
+    /**
+     * sending mode
+     */
+    private Mode mode = Mode.PERIODIC;
+
+    /**
+     * period in seconds at which the testcase PDUs are sent in periodic mode
+     */
+    private int period;
+
+    /**
+     * true to spread the testcase PDUs without a send offset over the period
+     */
+    private boolean spreadSends;
+
+    /**
+     * target number of PDUs per second in load mode
+     */
+    private int loadRate;
+
+    /**
+     * number of PDUs sent back to back in load mode
+     */
+    private int loadBurstSize;
+
+    /**
+     * duration of the load in seconds, 0 for no limit
+     */
+    private int loadDuration;
+
+    /**
+     * event number of the first PDU generated in load mode
+     */
+    private int loadFirstEventNumber;
+
+    /**
+     * true to load the testcases from their compiled binary form, rebuilt when a CSV file changes
+     */
+    private boolean fadCache;
+
+    /**
+     * directory of the compiled testcase files
+     */
+    private Path fadCacheDirectory;
+
+    /**
+     * true to publish live metrics over JMX and HTTP
+     */
+    private boolean metrics;
+
+    /**
+     * TCP port of the Prometheus metrics endpoint, 0 for JMX only
+     */
+    private int metricsPort;
+
+    /**
+     * recording sent in replay mode
+     */
+    private Path replayFile;
+
+    /**
+     * replay speed as a multiple of real time, 0 for as fast as possible
+     */
+    private double replaySpeed;
+
     /**
      * load all configuration for the Sut
      * @param fileName config file from the resource folder
@@ -76,6 +168,40 @@ public class DisSutConfig {
             logger.error("Error parsing the broadCastNetwork" + configFile.toString(), e);
         }
 
+        String modeName = properties.getProperty(MODE, Mode.PERIODIC.name()).trim();
+        try {
+            mode = Mode.valueOf(modeName.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.error("Unknown mode {}, using {}", modeName, mode);
+        }
+        period = getIntProperty(properties, PERIOD, 6);
+        if (period < 1) {
+            logger.error("Invalid {}={}, using 1", PERIOD, period);
+            period = 1;
+        }
+        spreadSends = Boolean.parseBoolean(properties.getProperty(SPREAD_SENDS, "true").trim());
+        loadRate = getIntProperty(properties, LOAD_RATE, 1000);
+        loadBurstSize = getIntProperty(properties, LOAD_BURST_SIZE, 10);
+        loadDuration = getIntProperty(properties, LOAD_DURATION, 0);
+        loadFirstEventNumber = getIntProperty(properties, LOAD_FIRST_EVENT_NUMBER, 1000);
+
+        fadCache = Boolean.parseBoolean(properties.getProperty(FAD_CACHE, "true").trim());
+        String cacheDirectory = properties.getProperty(FAD_CACHE_DIRECTORY, "").trim();
+        fadCacheDirectory = cacheDirectory.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "md-fad-cache") : Paths.get(cacheDirectory);
+
+        metrics = Boolean.parseBoolean(properties.getProperty(METRICS, "false").trim());
+        metricsPort = getIntProperty(properties, METRICS_PORT, 9465);
+
+        replayFile = Paths.get(properties.getProperty(REPLAY_FILE, "detonations.mdrc").trim());
+        String speed = properties.getProperty(REPLAY_SPEED, "1").trim();
+        try {
+            replaySpeed = Double.parseDouble(speed);
+        } catch (NumberFormatException e) {
+            replaySpeed = 1;
+            logger.error("Error parsing {}={}, using {}", REPLAY_SPEED, speed, replaySpeed);
+        }
+
         String testcaseDir = properties.getProperty(TEST_CASE_DIR, DEFAULT_TEST_CASE_DIR);
 
         URL testcaseDirFileUrl = this.getClass().getResource("/" + testcaseDir + "/");
@@ -91,6 +217,9 @@ public class DisSutConfig {
             File[] files = testcaseDirFile.listFiles();
             if (files != null) {
                 for (File file : files) {
+                    if (!file.isFile()) {
+                        continue;
+                    }
                     try {
                         testcaseList.add(file.toURI().toURL());
                     } 
@@ -105,6 +234,19 @@ public class DisSutConfig {
         }
     }
     
+    private static int getIntProperty(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            logger.error("Error parsing {}={}, using {}", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
     public List<URL> getTestcaseList() {
         return testcaseList;
     }
@@ -117,4 +259,56 @@ public class DisSutConfig {
         return broadCastNetwork;
     }
 
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public boolean isSpreadSends() {
+        return spreadSends;
+    }
+
+    public int getLoadRate() {
+        return loadRate;
+    }
+
+    public int getLoadBurstSize() {
+        return loadBurstSize;
+    }
+
+    public int getLoadDuration() {
+        return loadDuration;
+    }
+
+    public int getLoadFirstEventNumber() {
+        return loadFirstEventNumber;
+    }
+
+    public boolean isFadCache() {
+        return fadCache;
+    }
+
+    public Path getFadCacheDirectory() {
+        return fadCacheDirectory;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public Path getReplayFile() {
+        return replayFile;
+    }
+
+    public double getReplaySpeed() {
+        return replaySpeed;
+    }
+
 }
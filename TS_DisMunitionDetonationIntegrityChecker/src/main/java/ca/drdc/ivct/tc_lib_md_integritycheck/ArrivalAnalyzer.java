@@ -0,0 +1,446 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyses the arrival of every DetonationPdu of the FAD events, repeats included, to
+ * tell the losses of the SuT link from the content mismatches.
+ * <p>
+ * The SuT re-sends the FAD every period and stamps each PDU with its DIS timestamp when
+ * sent. The send timestamps of the repeats of an event are therefore spaced by a whole
+ * number of send intervals: the smallest spacing seen gives the interval of the event,
+ * and the sends expected between the first and last timestamps of its SuT give the
+ * number of sends lost. A repeated timestamp is a duplicate. Per SuT link, identified by
+ * the site and application numbers, a PDU sent before one already received is
+ * reordered, and the interarrival jitter is the smoothed difference between the
+ * interarrival and send intervals of consecutive PDUs, as defined by RFC 3550.
+ * <p>
+ * Everything is kept in primitive arrays indexed by FAD entry and by link, allocated
+ * once, so that recording an arrival creates no object. The timestamps wrap every hour
+ * and are unwrapped per link, which holds as long as PDUs are not reordered by half an
+ * hour.
+ * <p>
+ * PDUs are recorded from a single thread; the counts can be read from any thread, and
+ * the analysis is made once the recording is over.
+ */
+public class ArrivalAnalyzer {
+
+    private static final int TIMESTAMP_UNIT_BITS = 31;
+    private static final int JITTER_GAIN = 16;
+
+    private final List<MunitionDetonation> fad;
+    private final LongIntHashMap fadIndexes;
+
+    // Per FAD entry
+    private final int[] eventLinks;
+    private final int[] arrivals;
+    private final int[] duplicates;
+    private final long[] firstSent;
+    private final long[] lastSent;
+    private final long[] lastArrival;
+    private final long[] minimumInterval;
+    private final long[] maximumDelayVariation;
+
+    // Per link
+    private final int[] linkSimulations;
+    private final long[] linkArrivals;
+    private final long[] linkReordered;
+    private final long[] linkDuplicates;
+    private final int[] linkLastTimestamp;
+    private final long[] linkLastSent;
+    private final long[] linkFirstSent;
+    private final long[] linkMaximumSent;
+    private final long[] linkLastArrival;
+    private final double[] linkJitter;
+
+    private volatile long arrivalCount;
+    private volatile long reorderedCount;
+    private volatile long foreignCount;
+
+    // Results of analyse()
+    private int[] expected;
+    private long[] linkExpected;
+    private long[] linkLost;
+    private int[] linkEventsWithLoss;
+    private int[] linkEventsMissing;
+    private long[] linkInterval;
+    private volatile double lossRate = Double.NaN;
+
+    /**
+     * @param fad the munition detonations of the FAD
+     */
+    public ArrivalAnalyzer(List<MunitionDetonation> fad) {
+        this(fad, MunitionDetonationMatcher.eventKeysOf(fad));
+    }
+
+    /**
+     * @param fad the munition detonations of the FAD
+     * @param fadKeys the event key of each FAD entry
+     */
+    ArrivalAnalyzer(List<MunitionDetonation> fad, long[] fadKeys) {
+        this.fad = fad;
+        int size = fadKeys.length;
+        fadIndexes = new LongIntHashMap(size);
+        LongIntHashMap linkIndexes = new LongIntHashMap(4);
+        eventLinks = new int[size];
+        int[] simulations = new int[Math.max(1, size)];
+        for (int i = 0; i < size; i++) {
+            fadIndexes.putIfAbsent(fadKeys[i], i);
+            int simulation = DetonationPduLayout.simulationOf(fadKeys[i]);
+            int link = linkIndexes.putIfAbsent(simulation, linkIndexes.size());
+            if (link == LongIntHashMap.MISSING) {
+                link = linkIndexes.size() - 1;
+                simulations[link] = simulation;
+            }
+            eventLinks[i] = link;
+        }
+        linkSimulations = Arrays.copyOf(simulations, linkIndexes.size());
+
+        arrivals = new int[size];
+        duplicates = new int[size];
+        firstSent = new long[size];
+        lastSent = new long[size];
+        lastArrival = new long[size];
+        minimumInterval = new long[size];
+        Arrays.fill(minimumInterval, Long.MAX_VALUE);
+        maximumDelayVariation = new long[size];
+
+        int linkCount = linkSimulations.length;
+        linkArrivals = new long[linkCount];
+        linkReordered = new long[linkCount];
+        linkDuplicates = new long[linkCount];
+        linkLastTimestamp = new int[linkCount];
+        linkLastSent = new long[linkCount];
+        linkFirstSent = new long[linkCount];
+        linkMaximumSent = new long[linkCount];
+        linkLastArrival = new long[linkCount];
+        linkJitter = new double[linkCount];
+    }
+
+    /**
+     * Record the arrival of a DetonationPdu.
+     *
+     * @param eventKey the event key of the PDU
+     * @param timestamp the DIS timestamp of the PDU, see {@link DetonationPduLayout#timestamp}
+     * @param arrivalNanos the arrival time of the PDU in nanoseconds, from {@link System#nanoTime()} or,
+     *                     for a recording, its recorded arrival time
+     */
+    public void record(long eventKey, int timestamp, long arrivalNanos) {
+        int event = fadIndexes.get(eventKey);
+        if (event == LongIntHashMap.MISSING) {
+            foreignCount++;
+            return;
+        }
+        int link = eventLinks[event];
+        long sent = unwrap(link, timestamp);
+        arrivalCount++;
+
+        if (linkArrivals[link]++ == 0) {
+            linkFirstSent[link] = sent;
+            linkMaximumSent[link] = sent;
+        } else {
+            if (sent < linkMaximumSent[link]) {
+                linkReordered[link]++;
+                reorderedCount++;
+            } else {
+                linkMaximumSent[link] = sent;
+            }
+            linkFirstSent[link] = Math.min(linkFirstSent[link], sent);
+            long variation = (arrivalNanos - linkLastArrival[link])
+                    - DetonationPduLayout.timestampUnitsToNanos(sent - linkLastSent[link]);
+            linkJitter[link] += (Math.abs(variation) - linkJitter[link]) / JITTER_GAIN;
+        }
+        linkLastSent[link] = sent;
+        linkLastArrival[link] = arrivalNanos;
+
+        if (arrivals[event] == 0) {
+            firstSent[event] = sent;
+            lastSent[event] = sent;
+        } else if (sent == lastSent[event]) {
+            duplicates[event]++;
+            linkDuplicates[link]++;
+            return;
+        } else if (sent > lastSent[event]) {
+            long interval = sent - lastSent[event];
+            minimumInterval[event] = Math.min(minimumInterval[event], interval);
+            long variation = Math.abs((arrivalNanos - lastArrival[event])
+                    - DetonationPduLayout.timestampUnitsToNanos(interval));
+            maximumDelayVariation[event] = Math.max(maximumDelayVariation[event], variation);
+            lastSent[event] = sent;
+        } else {
+            // A late send of the event, counted as received
+            firstSent[event] = Math.min(firstSent[event], sent);
+        }
+        lastArrival[event] = arrivalNanos;
+        arrivals[event]++;
+    }
+
+    /**
+     * @return the send time of the PDU in timestamp units, continuous across the hours
+     */
+    private long unwrap(int link, int timestamp) {
+        int units = timestamp >>> 1;
+        if (linkArrivals[link] == 0) {
+            linkLastTimestamp[link] = units;
+            return units;
+        }
+        // Sign-extend the 31 bit difference
+        long delta = (long) (units - linkLastTimestamp[link]) << (64 - TIMESTAMP_UNIT_BITS) >> (64 - TIMESTAMP_UNIT_BITS);
+        linkLastTimestamp[link] = units;
+        return linkLastSent[link] + delta;
+    }
+
+    /**
+     * Estimate the sends expected and lost per FAD event and per link. To be called once
+     * the recording is over.
+     * <p>
+     * The send interval of an event received at least twice is the smallest spacing of
+     * its timestamps; that of the other events is the median interval of their link. An
+     * event is expected once per interval between the first and last send timestamps of
+     * its link, wherever its own first send falls. Without any repeat on a link, each
+     * received event is expected once.
+     */
+    public void analyse() {
+        int linkCount = linkSimulations.length;
+        expected = new int[arrivals.length];
+        linkExpected = new long[linkCount];
+        linkLost = new long[linkCount];
+        linkEventsWithLoss = new int[linkCount];
+        linkEventsMissing = new int[linkCount];
+        linkInterval = medianIntervals();
+
+        long totalExpected = 0;
+        long totalLost = 0;
+        for (int event = 0; event < arrivals.length; event++) {
+            int link = eventLinks[event];
+            if (arrivals[event] == 0) {
+                linkEventsMissing[link]++;
+                continue;
+            }
+            long interval = minimumInterval[event] != Long.MAX_VALUE ? minimumInterval[event] : linkInterval[link];
+            long count = interval <= 0 ? 1
+                    : (firstSent[event] - linkFirstSent[link]) / interval
+                            + (linkMaximumSent[link] - firstSent[event]) / interval + 1;
+            expected[event] = (int) Math.min(Integer.MAX_VALUE, Math.max(count, arrivals[event]));
+            int lost = expected[event] - arrivals[event];
+            linkExpected[link] += expected[event];
+            linkLost[link] += lost;
+            if (lost > 0) {
+                linkEventsWithLoss[link]++;
+            }
+        }
+        for (int link = 0; link < linkCount; link++) {
+            totalExpected += linkExpected[link];
+            totalLost += linkLost[link];
+        }
+        lossRate = totalExpected == 0 ? Double.NaN : (double) totalLost / totalExpected;
+    }
+
+    /**
+     * @return the median send interval of the events received at least twice, per link, 0 if none
+     */
+    private long[] medianIntervals() {
+        int linkCount = linkSimulations.length;
+        int[] counts = new int[linkCount];
+        for (int event = 0; event < arrivals.length; event++) {
+            if (minimumInterval[event] != Long.MAX_VALUE) {
+                counts[eventLinks[event]]++;
+            }
+        }
+        long[][] intervals = new long[linkCount][];
+        for (int link = 0; link < linkCount; link++) {
+            intervals[link] = new long[counts[link]];
+            counts[link] = 0;
+        }
+        for (int event = 0; event < arrivals.length; event++) {
+            if (minimumInterval[event] != Long.MAX_VALUE) {
+                int link = eventLinks[event];
+                intervals[link][counts[link]++] = minimumInterval[event];
+            }
+        }
+        long[] medians = new long[linkCount];
+        for (int link = 0; link < linkCount; link++) {
+            if (intervals[link].length > 0) {
+                Arrays.sort(intervals[link]);
+                medians[link] = intervals[link][intervals[link].length / 2];
+            }
+        }
+        return medians;
+    }
+
+    /**
+     * Log the loss, reordering and jitter of each link, and whether the missing FAD
+     * events can be explained by the link.
+     *
+     * @param logger the logger
+     */
+    public void log(Logger logger) {
+        for (int link = 0; link < linkSimulations.length; link++) {
+            String name = MultiSutMatcher.simulationName(linkSimulations[link]);
+            if (linkArrivals[link] == 0) {
+                logger.info("Link {}: no FAD munition detonation received.", name);
+                continue;
+            }
+            logger.info("Link {}: {} PDUs received, {} of {} expected sends lost ({}%) on {} events, {} duplicates, "
+                            + "{} reordered, jitter {} ms, send interval {} ms.", name, linkArrivals[link],
+                    linkLost[link], linkExpected[link], percent(linkLost[link], linkExpected[link]),
+                    linkEventsWithLoss[link], linkDuplicates[link], linkReordered[link],
+                    millis(linkJitter[link]), millis(DetonationPduLayout.timestampUnitsToNanos(linkInterval[link])));
+            if (linkEventsMissing[link] > 0) {
+                if (linkLost[link] > 0) {
+                    logger.warn("Link {}: {} FAD events never received while the link lost sends; some may be network "
+                            + "or performance losses rather than content mismatches.", name, linkEventsMissing[link]);
+                } else if (linkInterval[link] > 0) {
+                    logger.warn("Link {}: {} FAD events never received while every other send arrived; they are "
+                            + "likely not sent or sent with other identifiers.", name, linkEventsMissing[link]);
+                }
+            }
+        }
+        if (foreignCount > 0) {
+            logger.info("{} received PDUs of events not in the FAD were not analysed.", foreignCount);
+        }
+    }
+
+    /**
+     * Write one JSON object per link, then one per FAD event received at least once.
+     *
+     * @param file the file to create or overwrite
+     * @throws IOException if the file cannot be written
+     */
+    public void writeJsonLines(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int link = 0; link < linkSimulations.length; link++) {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("link", MultiSutMatcher.simulationName(linkSimulations[link]));
+                line.put("received", linkArrivals[link]);
+                line.put("expected", linkExpected[link]);
+                line.put("lost", linkLost[link]);
+                line.put("lossRate", (double) linkLost[link] / linkExpected[link]);
+                line.put("eventsWithLoss", linkEventsWithLoss[link]);
+                line.put("eventsMissing", linkEventsMissing[link]);
+                line.put("duplicates", linkDuplicates[link]);
+                line.put("reordered", linkReordered[link]);
+                line.put("jitterMs", millis(linkJitter[link]));
+                line.put("intervalMs", millis(DetonationPduLayout.timestampUnitsToNanos(linkInterval[link])));
+                // json-simple writes the loss rate of a link with nothing expected as null
+                JSONValue.writeJSONString(line, writer);
+                writer.write('\n');
+            }
+            for (int event = 0; event < arrivals.length; event++) {
+                if (arrivals[event] == 0) {
+                    continue;
+                }
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("eventIdentifier", String.valueOf(fad.get(event).getEventIdentifier()));
+                line.put("received", arrivals[event]);
+                line.put("expected", expected[event]);
+                line.put("lost", expected[event] - arrivals[event]);
+                line.put("duplicates", duplicates[event]);
+                line.put("intervalMs", minimumInterval[event] == Long.MAX_VALUE ? null
+                        : millis(DetonationPduLayout.timestampUnitsToNanos(minimumInterval[event])));
+                line.put("maxDelayVariationMs", millis(maximumDelayVariation[event]));
+                JSONValue.writeJSONString(line, writer);
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static double millis(double nanos) {
+        return Math.round(nanos / TimeUnit.MILLISECONDS.toNanos(1) * 1000) / 1000.0;
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : Math.round(100_000.0 * part / total) / 1000.0;
+    }
+
+    /**
+     * @return the number of FAD event PDUs recorded, repeats included
+     */
+    public long getArrivalCount() {
+        return arrivalCount;
+    }
+
+    /**
+     * @return the number of PDUs received after a PDU of their link sent later
+     */
+    public long getReorderedCount() {
+        return reorderedCount;
+    }
+
+    /**
+     * @return the largest interarrival jitter of the links, in milliseconds
+     */
+    public double getJitterMillis() {
+        double jitter = 0;
+        for (double linkJitterNanos : linkJitter) {
+            jitter = Math.max(jitter, linkJitterNanos);
+        }
+        return millis(jitter);
+    }
+
+    /**
+     * @return the fraction of the expected sends lost on every link, NaN until {@link #analyse()}
+     */
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    /**
+     * @param fadIndex the index of a FAD entry
+     * @return the number of distinct sends of the entry received
+     */
+    int getArrivals(int fadIndex) {
+        return arrivals[fadIndex];
+    }
+
+    /**
+     * @param fadIndex the index of a FAD entry
+     * @return the number of sends of the entry expected, as estimated by {@link #analyse()}
+     */
+    int getExpected(int fadIndex) {
+        return expected[fadIndex];
+    }
+
+    /**
+     * @param fadIndex the index of a FAD entry
+     * @return the number of sends of the entry received more than once
+     */
+    int getDuplicates(int fadIndex) {
+        return duplicates[fadIndex];
+    }
+}
@@ -23,7 +23,9 @@ import org.slf4j.Logger;
  * Wait for a determined amount of time.
  * 
  * @author laurenceO
+ * @deprecated use {@link ListeningWindow}, which also ends when the expected PDUs have been received
  */
+@Deprecated
 public class CountdownTimer implements Runnable{
     private volatile int countdownSec; // in seconds
     private final int initialCountdown;
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the first received occurrence of each munition detonation event, in encoded form.
+ * <p>
+ * Repeats of an event are dropped at ingest, before anything is decoded. The first
+ * occurrence is stored as its encoded DetonationPdu, which is several times smaller
+ * than the decoded objects, in fixed-size byte chunks indexed by primitive arrays.
+ * Once the memory limit is reached, further records are appended to a spill file.
+ * <p>
+ * Records are added from a single thread. Once ingestion is over, they can be read
+ * concurrently. A capture can be cleared and reused, keeping its memory and spill file.
+ */
+public class DetonationCapture implements Closeable {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final long memoryLimit;
+    private final Path spillDirectory;
+    private final LongIntHashMap recordByKey = new LongIntHashMap(1024);
+    private final List<byte[]> chunks = new ArrayList<>();
+    private int usedChunks;
+
+    /** Per record: offset in the chunks if positive, otherwise -(offset in the spill file + 1) */
+    private long[] locations = new long[1024];
+    private int[] lengths = new int[1024];
+    private int recordCount;
+
+    private int chunkPosition = CHUNK_SIZE;
+    private FileChannel spillChannel;
+    private Path spillFile;
+    private long spillSize;
+    private long duplicates;
+
+    /**
+     * @param memoryLimit number of bytes of records kept in memory before spilling to disk
+     * @param spillDirectory directory of the spill file
+     */
+    public DetonationCapture(long memoryLimit, Path spillDirectory) {
+        this.memoryLimit = memoryLimit;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Record an encoded DetonationPdu unless its event was already captured.
+     *
+     * @param eventKey the event key of the PDU
+     * @param encodedPdu the encoded PDU, its position is left unchanged
+     * @return true if it is the first occurrence of the event
+     */
+    public boolean add(long eventKey, ByteBuffer encodedPdu) {
+        if (recordByKey.putIfAbsent(eventKey, recordCount) != LongIntHashMap.MISSING) {
+            duplicates++;
+            return false;
+        }
+        if (recordCount == locations.length) {
+            locations = Arrays.copyOf(locations, recordCount * 2);
+            lengths = Arrays.copyOf(lengths, recordCount * 2);
+        }
+        int length = encodedPdu.remaining();
+        lengths[recordCount] = length;
+        locations[recordCount] = store(encodedPdu.duplicate(), length);
+        recordCount++;
+        return true;
+    }
+
+    private long store(ByteBuffer encodedPdu, int length) {
+        if (chunkPosition + length > CHUNK_SIZE) {
+            if ((long) (usedChunks + 1) * CHUNK_SIZE > memoryLimit) {
+                return spill(encodedPdu);
+            }
+            if (usedChunks == chunks.size()) {
+                chunks.add(new byte[CHUNK_SIZE]);
+            }
+            usedChunks++;
+            chunkPosition = 0;
+        }
+        long location = (long) (usedChunks - 1) * CHUNK_SIZE + chunkPosition;
+        encodedPdu.get(chunks.get(usedChunks - 1), chunkPosition, length);
+        chunkPosition += length;
+        return location;
+    }
+
+    private long spill(ByteBuffer encodedPdu) {
+        try {
+            if (spillChannel == null) {
+                Files.createDirectories(spillDirectory);
+                spillFile = Files.createTempFile(spillDirectory, "detonation-capture-", ".bin");
+                spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            long location = -(spillSize + 1);
+            while (encodedPdu.hasRemaining()) {
+                spillSize += spillChannel.write(encodedPdu, spillSize);
+            }
+            return location;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill the captured detonations to " + spillDirectory, e);
+        }
+    }
+
+    /**
+     * @param eventKey an event key
+     * @return the encoded DetonationPdu of the first occurrence of the event, or null if it was not received
+     */
+    public ByteBuffer get(long eventKey) {
+        int record = recordByKey.get(eventKey);
+        if (record == LongIntHashMap.MISSING) {
+            return null;
+        }
+        long location = locations[record];
+        int length = lengths[record];
+        if (location >= 0) {
+            byte[] chunk = chunks.get((int) (location / CHUNK_SIZE));
+            return ByteBuffer.wrap(chunk, (int) (location % CHUNK_SIZE), length).slice();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            long position = -location - 1;
+            while (buffer.hasRemaining()) {
+                if (spillChannel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of the spill file");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the spilled detonation from " + spillFile, e);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param eventKey an event key
+     * @return true if the event was received
+     */
+    public boolean contains(long eventKey) {
+        return recordByKey.containsKey(eventKey);
+    }
+
+    /**
+     * @param eventKey an event key
+     * @return the number of hash slots read to look the event up
+     */
+    int lookupProbes(long eventKey) {
+        return recordByKey.probeCount(eventKey);
+    }
+
+    /**
+     * @return the number of distinct events captured
+     */
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of repeated events dropped
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the number of bytes of records spilled to disk
+     */
+    public long getSpilledBytes() {
+        return spillSize;
+    }
+
+    /**
+     * Forget every record. The chunks are kept for the next records and the spill file is
+     * truncated.
+     *
+     * @throws UncheckedIOException if the spill file cannot be truncated
+     */
+    public void clear() {
+        recordByKey.clear();
+        recordCount = 0;
+        usedChunks = 0;
+        chunkPosition = CHUNK_SIZE;
+        duplicates = 0;
+        if (spillChannel != null) {
+            try {
+                spillChannel.truncate(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not truncate the spill file " + spillFile, e);
+            }
+        }
+        spillSize = 0;
+    }
+
+    /**
+     * Delete the spill file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (spillChannel != null) {
+            spillChannel.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.fom.base.structs.EventIdentifierStruct;
+
+/**
+ * Outcome of the checks of one munition detonation of the FAD against its received match.
+ */
+public class DetonationCheckResult {
+
+    private final EventIdentifierStruct eventIdentifier;
+    private final boolean found;
+    private final boolean parametersMatch;
+    private final boolean locationMatch;
+    private final boolean velocityMatch;
+    private final boolean relativePositionMatch;
+    private final double locationDeviation;
+    private final double velocityDeviation;
+    private final double relativePositionDeviation;
+
+    /**
+     * @param eventIdentifier event identifier of the FAD entry
+     * @param found true if a munition detonation with this identifier was received
+     * @param parametersMatch true if the parameters match
+     * @param locationMatch true if the detonation locations match
+     * @param velocityMatch true if the final velocity vectors match
+     * @param relativePositionMatch true if the relative detonation locations match
+     * @param locationDeviation deviation of the detonation location, see {@link SpatialDeviation}
+     * @param velocityDeviation deviation of the final velocity vector
+     * @param relativePositionDeviation deviation of the relative detonation location
+     */
+    public DetonationCheckResult(EventIdentifierStruct eventIdentifier, boolean found, boolean parametersMatch,
+            boolean locationMatch, boolean velocityMatch, boolean relativePositionMatch,
+            double locationDeviation, double velocityDeviation, double relativePositionDeviation) {
+        this.eventIdentifier = eventIdentifier;
+        this.found = found;
+        this.parametersMatch = parametersMatch;
+        this.locationMatch = locationMatch;
+        this.velocityMatch = velocityMatch;
+        this.relativePositionMatch = relativePositionMatch;
+        this.locationDeviation = locationDeviation;
+        this.velocityDeviation = velocityDeviation;
+        this.relativePositionDeviation = relativePositionDeviation;
+    }
+
+    /**
+     * @param eventIdentifier event identifier of the FAD entry
+     * @return the result of a FAD entry that was not received
+     */
+    public static DetonationCheckResult notFound(EventIdentifierStruct eventIdentifier) {
+        return new DetonationCheckResult(eventIdentifier, false, false, false, false, false,
+                Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    public EventIdentifierStruct getEventIdentifier() {
+        return eventIdentifier;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public boolean isParametersMatch() {
+        return parametersMatch;
+    }
+
+    public boolean isLocationMatch() {
+        return locationMatch;
+    }
+
+    public boolean isVelocityMatch() {
+        return velocityMatch;
+    }
+
+    public boolean isRelativePositionMatch() {
+        return relativePositionMatch;
+    }
+
+    public double getLocationDeviation() {
+        return locationDeviation;
+    }
+
+    public double getVelocityDeviation() {
+        return velocityDeviation;
+    }
+
+    public double getRelativePositionDeviation() {
+        return relativePositionDeviation;
+    }
+
+    /**
+     * The velocity is not part of the outcome: a mismatch can be due to the difference
+     * between DIS coordinates and the vcsutilities libraries rather than to the SuT.
+     *
+     * @return true if the spatial information that affects the outcome matches
+     */
+    public boolean isSpatialMatch() {
+        return locationMatch && relativePositionMatch;
+    }
+
+    /**
+     * @return true if this FAD entry passes the test
+     */
+    public boolean isPassed() {
+        return found && parametersMatch && isSpatialMatch();
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Filters raw DIS datagrams on their bytes and offers the useful DetonationPdus to a sink.
+ * <p>
+ * The PDU type, exercise identifier and event identifier are read in place. Only the
+ * first occurrence of a FAD event is copied into the sink; other PDU types, other
+ * exercises, events that are not in the FAD and repeats are dropped without creating
+ * any object. Every DetonationPdu of the exercise, repeats included, can first be
+ * recorded by an {@link ArrivalAnalyzer}.
+ * <p>
+ * This class is not thread-safe, its counts can be read from any thread.
+ */
+public class DetonationDatagramFilter {
+
+    private final DetonationSink sink;
+    private final int exerciseId;
+    private final ArrivalAnalyzer analyzer;
+
+    private volatile long datagramCount;
+    private volatile long exerciseDetonationCount;
+    private long detonationCount;
+    private long otherPduCount;
+    private long otherExerciseCount;
+    private long malformedCount;
+
+    /**
+     * @param sink the sink the FAD munition detonations are offered to
+     * @param exerciseId the exercise identifier to keep, 0 for any
+     */
+    public DetonationDatagramFilter(DetonationSink sink, int exerciseId) {
+        this(sink, exerciseId, null);
+    }
+
+    /**
+     * @param sink the sink the FAD munition detonations are offered to
+     * @param exerciseId the exercise identifier to keep, 0 for any
+     * @param analyzer the analyzer of the arrival of the DetonationPdus, or null
+     */
+    public DetonationDatagramFilter(DetonationSink sink, int exerciseId, ArrivalAnalyzer analyzer) {
+        this.sink = sink;
+        this.exerciseId = exerciseId;
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * @param datagram a raw DIS datagram just received, its position is left unchanged
+     * @return true if the datagram is a well-formed DetonationPdu, whether or not it was kept
+     */
+    public boolean accept(ByteBuffer datagram) {
+        return accept(datagram, System.nanoTime());
+    }
+
+    /**
+     * @param datagram a raw DIS datagram, its position is left unchanged
+     * @param arrivalNanos the arrival time of the datagram in nanoseconds, on any monotonic clock
+     * @return true if the datagram is a well-formed DetonationPdu, whether or not it was kept
+     */
+    public boolean accept(ByteBuffer datagram, long arrivalNanos) {
+        datagramCount++;
+        int start = datagram.position();
+        if (datagram.remaining() <= DetonationPduLayout.PDU_TYPE_OFFSET
+                || datagram.get(start + DetonationPduLayout.PDU_TYPE_OFFSET) != DetonationPduLayout.DETONATION_PDU_TYPE) {
+            otherPduCount++;
+            return false;
+        }
+        if (datagram.remaining() < DetonationPduLayout.MINIMUM_LENGTH) {
+            malformedCount++;
+            return false;
+        }
+        detonationCount++;
+        if (exerciseId != 0 && (datagram.get(start + DetonationPduLayout.EXERCISE_ID_OFFSET) & 0xFF) != exerciseId) {
+            otherExerciseCount++;
+            return true;
+        }
+        exerciseDetonationCount++;
+        long eventKey = DetonationPduLayout.eventKey(datagram);
+        if (analyzer != null) {
+            analyzer.record(eventKey, DetonationPduLayout.timestamp(datagram), arrivalNanos);
+        }
+        if (sink.admit(eventKey)) {
+            // The sink copies the bytes, the datagram buffer can be reused
+            sink.offer(eventKey, datagram);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of datagrams filtered so far, of any PDU type
+     */
+    public long getDatagramCount() {
+        return datagramCount;
+    }
+
+    /**
+     * @return the number of well-formed DetonationPdus of the exercise filtered so far, repeats included
+     */
+    public long getExerciseDetonationCount() {
+        return exerciseDetonationCount;
+    }
+
+    @Override
+    public String toString() {
+        return datagramCount + " datagrams, " + detonationCount + " DetonationPdus, " + otherPduCount
+                + " other PDU types, " + otherExerciseCount + " from other exercises, " + malformedCount
+                + " malformed DetonationPdus";
+    }
+}
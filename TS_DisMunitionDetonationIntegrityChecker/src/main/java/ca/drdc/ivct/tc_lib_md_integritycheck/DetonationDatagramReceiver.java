@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.DatagramRecordWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Receives the DIS datagrams directly and filters them on their raw bytes with a
+ * {@link DetonationDatagramFilter}, which keeps the receiving thread ahead of the traffic
+ * of a shared exercise network.
+ * <p>
+ * The DetonationPdus can also be recorded as received, to be replayed later by
+ * {@link ca.drdc.ivct.dis.common.DatagramRecordReader}.
+ * <p>
+ * The receiving thread is the only one offering PDUs to the sink. The sink can be
+ * read safely once {@link #close()} has returned. If the receiving thread stopped on an
+ * error, the sink only holds part of the traffic and {@link #getFailure()} tells why;
+ * a recording error only stops the recording.
+ */
+public class DetonationDatagramReceiver implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DetonationDatagramReceiver.class);
+    private static final int MAXIMUM_DATAGRAM_SIZE = 8192;
+
+    private final DatagramChannel channel;
+    private final DetonationDatagramFilter filter;
+    private final DatagramRecordWriter recorder;
+    private final Thread thread;
+    private volatile boolean recording;
+    private volatile Exception failure;
+
+    /**
+     * @param port the UDP port of the DIS traffic
+     * @param receiveBufferSize size of the socket receive buffer in bytes, 0 for the system default
+     * @param filter the filter of the received datagrams
+     * @param recorder the recorder of the received DetonationPdus, or null. It is closed with the receiver.
+     * @throws IOException if the port cannot be bound
+     */
+    public DetonationDatagramReceiver(int port, int receiveBufferSize, DetonationDatagramFilter filter,
+            DatagramRecordWriter recorder) throws IOException {
+        this.filter = filter;
+        this.recorder = recorder;
+        this.recording = recorder != null;
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            // The IVCT DIS plugin may listen on the same port
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if (receiveBufferSize > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            }
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        thread = new Thread(this::receive, "detonation-receiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAXIMUM_DATAGRAM_SIZE);
+        try {
+            while (true) {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                if (filter.accept(buffer) && recording) {
+                    record(buffer);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // close() was called
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            logger.error("Stopped receiving DIS datagrams", e);
+        }
+    }
+
+    private void record(ByteBuffer datagram) {
+        try {
+            recorder.write(datagram);
+        } catch (IOException e) {
+            recording = false;
+            logger.error("Stopped recording the received DetonationPdus after {}, receiving goes on",
+                    recorder.getRecordCount(), e);
+        }
+    }
+
+    /**
+     * @return the number of datagrams received so far, of any PDU type
+     */
+    public long getDatagramCount() {
+        return filter.getDatagramCount();
+    }
+
+    /**
+     * @return the error that stopped the receiving thread before {@link #close()} was called, or null
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stop receiving and wait for the receiving thread to finish. Closing again has no effect.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!thread.isAlive() && !channel.isOpen()) {
+            return;
+        }
+        channel.close();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Received {}.", filter);
+        if (recorder != null) {
+            recorder.close();
+            logger.info("{} DetonationPdus recorded.", recorder.getRecordCount());
+        }
+    }
+}
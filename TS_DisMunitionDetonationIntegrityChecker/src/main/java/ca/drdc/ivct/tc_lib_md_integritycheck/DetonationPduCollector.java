@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import edu.nps.moves.dis.DetonationPdu;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Feeds the received DetonationPdus to a {@link DetonationSink}.
+ * <p>
+ * The received PDU list only grows, so each call to {@link #drain()} offers only the
+ * PDUs appended since the previous call. This lets the PDUs be evaluated while the
+ * listening period is still running.
+ * <p>
+ * The list belongs to the IVCT DIS plugin, which appends to it from its receiving thread
+ * and documents no lock for it. It is therefore never modified here, and is read by
+ * index up to the size seen at the start of each call. An element not visible yet, or
+ * a size ahead of the elements, ends the call early; the rest is read by the next one.
+ */
+public class DetonationPduCollector {
+
+    private final Supplier<List<DetonationPdu>> receivedPdus;
+    private final DetonationSink sink;
+    private volatile int cursor;
+    private volatile long processedCount;
+
+    /**
+     * @param receivedPdus supplier of the list of DetonationPdus received so far
+     * @param sink the sink the PDUs are offered to
+     */
+    public DetonationPduCollector(Supplier<List<DetonationPdu>> receivedPdus, DetonationSink sink) {
+        this.receivedPdus = receivedPdus;
+        this.sink = sink;
+    }
+
+    /**
+     * Offer the PDUs received since the previous call.
+     *
+     * @return the number of PDUs processed
+     */
+    public int drain() {
+        List<DetonationPdu> pdus = receivedPdus.get();
+        int size = pdus.size();
+        int next = cursor;
+        if (size < next) {
+            // The plugin cleared its list, start over
+            next = 0;
+        }
+        int first = next;
+        for (; next < size; next++) {
+            DetonationPdu pdu;
+            try {
+                pdu = pdus.get(next);
+            } catch (IndexOutOfBoundsException e) {
+                // The size was updated before the element it counts
+                break;
+            }
+            if (pdu == null) {
+                break;
+            }
+            sink.offer(pdu);
+        }
+        int processed = next - first;
+        processedCount += processed;
+        cursor = next;
+        return processed;
+    }
+
+    /**
+     * @return the number of PDUs processed so far
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * @return the number of received PDUs waiting for the next call to {@link #drain()}
+     */
+    public int getBacklog() {
+        return Math.max(0, receivedPdus.get().size() - cursor);
+    }
+
+    public DetonationSink getSink() {
+        return sink;
+    }
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import edu.nps.moves.dis.DetonationPdu;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Destination of the received DetonationPdus, keyed by their DIS event identifier packed
+ * by {@link ca.drdc.ivct.dis.common.DetonationPduLayout#eventKey(int, int, int)}.
+ * <p>
+ * PDUs are offered from a single thread; the counts can be read from any thread.
+ */
+public interface DetonationSink {
+
+    /**
+     * Decide from its event key alone whether a received PDU must be offered. PDUs that
+     * are not needed for the verdict are counted here and need not be offered.
+     *
+     * @param eventKey the event key of a received PDU
+     * @return true if the PDU must be offered
+     */
+    boolean admit(long eventKey);
+
+    /**
+     * Record a received encoded DetonationPdu.
+     *
+     * @param eventKey the event key of the PDU
+     * @param encodedPdu the encoded PDU, its bytes are copied
+     * @return true if it is the first occurrence of its event identifier
+     */
+    boolean offer(long eventKey, ByteBuffer encodedPdu);
+
+    /**
+     * Record a received DetonationPdu.
+     *
+     * @param pdu the received PDU
+     * @return true if it is the first occurrence of its event identifier
+     */
+    boolean offer(DetonationPdu pdu);
+
+    /**
+     * @return the number of distinct event identifiers received
+     */
+    int getReceivedCount();
+
+    /**
+     * @return the number of distinct event identifiers received that are not in the FAD
+     */
+    int getForeignCount();
+
+    /**
+     * @return the number of repeated event identifiers dropped
+     */
+    long getDuplicateCount();
+
+    /**
+     * @return the number of distinct FAD event identifiers received
+     */
+    int getMatchedCount();
+
+    /**
+     * @return true when every FAD event identifier has been received
+     */
+    boolean isComplete();
+
+    /**
+     * Forget every received PDU and restart the counts, keeping the FAD. Must not be
+     * called while PDUs are offered.
+     */
+    void reset();
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+/**
+ * Histogram of non-negative deviations with fixed logarithmic buckets.
+ * <p>
+ * Buckets cover {@value #MIN_VALUE} to {@value #MAX_VALUE} with {@value #BUCKETS_PER_DECADE}
+ * buckets per decade, plus one bucket below and one above that range. Recording a value
+ * does not allocate. Percentiles are estimated with the upper bound of their bucket,
+ * so their relative error is below 13%; the maximum is exact.
+ * This class is not thread-safe.
+ */
+public class DeviationHistogram {
+
+    public static final double MIN_VALUE = 1e-9;
+    public static final double MAX_VALUE = 1e6;
+    public static final int BUCKETS_PER_DECADE = 20;
+
+    private static final int DECADES = 15;
+    private static final int BUCKET_COUNT = DECADES * BUCKETS_PER_DECADE + 2;
+    private static final double LOG_MIN = Math.log10(MIN_VALUE);
+
+    private final double threshold;
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long aboveThreshold;
+    private double sum;
+    private double max;
+
+    /**
+     * @param threshold the threshold of the check, values above it are counted; NaN if unknown
+     */
+    public DeviationHistogram(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param deviation the absolute deviation, NaN values are ignored
+     */
+    public void record(double deviation) {
+        if (Double.isNaN(deviation)) {
+            return;
+        }
+        double value = Math.abs(deviation);
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+        if (value > threshold) {
+            aboveThreshold++;
+        }
+    }
+
+    private static int bucketOf(double value) {
+        if (value < MIN_VALUE) {
+            return 0;
+        }
+        if (value >= MAX_VALUE) {
+            return BUCKET_COUNT - 1;
+        }
+        int bucket = 1 + (int) ((Math.log10(value) - LOG_MIN) * BUCKETS_PER_DECADE);
+        return Math.min(bucket, BUCKET_COUNT - 2);
+    }
+
+    /**
+     * @param bucket a bucket index
+     * @return the exclusive upper bound of the bucket
+     */
+    public static double upperBound(int bucket) {
+        if (bucket == BUCKET_COUNT - 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.pow(10, LOG_MIN + (double) bucket / BUCKETS_PER_DECADE);
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimated value of the percentile, NaN if nothing was recorded
+     */
+    public double getPercentile(double percentile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(upperBound(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @param other a histogram whose counts are added to this one
+     */
+    public void merge(DeviationHistogram other) {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        count += other.count;
+        aboveThreshold += other.aboveThreshold;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    public long getBucket(int bucket) {
+        return counts[bucket];
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getAboveThreshold() {
+        return aboveThreshold;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+
+/**
+ * Distribution of the deviation of each spatial field between the FAD entries and
+ * their received match, used to tune the thresholds of the TcParam.json. The fields
+ * are in the order of the {@link SpatialArrays} components.
+ * This class is not thread-safe.
+ */
+public class DeviationStatistics {
+
+    private static final String[] FIELDS = {
+            "detonationLocation.x", "detonationLocation.y", "detonationLocation.z",
+            "finalVelocity.x", "finalVelocity.y", "finalVelocity.z",
+            "relativeDetonationLocation.x", "relativeDetonationLocation.y", "relativeDetonationLocation.z" };
+
+    private final DeviationHistogram[] histograms = new DeviationHistogram[FIELDS.length];
+
+    /**
+     * @param spatialThreshold the thresholds of the spatial checks, keyed by field name
+     */
+    public DeviationStatistics(Map<String, Double> spatialThreshold) {
+        double locationThreshold = threshold(spatialThreshold, SpatialDeviation.WORLD_LOCATION_THRESHOLD);
+        double velocityThreshold = threshold(spatialThreshold, SpatialDeviation.VELOCITY_THRESHOLD);
+        for (int field = 0; field < FIELDS.length; field++) {
+            histograms[field] = new DeviationHistogram(field >= SpatialArrays.VELOCITY && field < SpatialArrays.RELATIVE_POSITION
+                    ? velocityThreshold : locationThreshold);
+        }
+    }
+
+    private static double threshold(Map<String, Double> spatialThreshold, String key) {
+        Double value = spatialThreshold == null ? null : spatialThreshold.get(key);
+        return value == null ? Double.NaN : value;
+    }
+
+    /**
+     * Record the deviation of every spatial field of a block of FAD entries. The
+     * fields of missing matches and structs are NaN and ignored.
+     *
+     * @param expected the FAD entries
+     * @param actual their received matches, indexed like the FAD entries
+     * @param count the number of entries to record, from index 0
+     */
+    public void record(SpatialArrays expected, SpatialArrays actual, int count) {
+        for (int field = 0; field < FIELDS.length; field++) {
+            DeviationHistogram histogram = histograms[field];
+            double[] expectedValues = expected.getComponent(field);
+            double[] actualValues = actual.getComponent(field);
+            for (int i = 0; i < count; i++) {
+                histogram.record(expectedValues[i] - actualValues[i]);
+            }
+        }
+    }
+
+    /**
+     * @param other statistics with the same thresholds, whose counts are added to these
+     */
+    public void merge(DeviationStatistics other) {
+        for (int field = 0; field < FIELDS.length; field++) {
+            histograms[field].merge(other.histograms[field]);
+        }
+    }
+
+    /**
+     * Log count, percentiles, maximum and number of values above the threshold of each field.
+     *
+     * @param logger the logger
+     */
+    public void log(Logger logger) {
+        for (int field = 0; field < FIELDS.length; field++) {
+            DeviationHistogram histogram = histograms[field];
+            logger.info("Deviation of {}: count={} p50={} p99={} max={} above threshold {}: {}", FIELDS[field],
+                    histogram.getCount(), histogram.getPercentile(50), histogram.getPercentile(99),
+                    histogram.getMax(), histogram.getThreshold(), histogram.getAboveThreshold());
+        }
+    }
+
+    /**
+     * Write the histogram of each field as a JSON object. Only non-empty buckets are
+     * written, each with its exclusive upper bound.
+     *
+     * @param file the file to create or overwrite
+     * @throws IOException if the file cannot be written
+     */
+    public void writeJson(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            for (int field = 0; field < FIELDS.length; field++) {
+                DeviationHistogram histogram = histograms[field];
+                Map<String, Object> values = new LinkedHashMap<>();
+                values.put("count", histogram.getCount());
+                values.put("threshold", histogram.getThreshold());
+                values.put("aboveThreshold", histogram.getAboveThreshold());
+                values.put("mean", histogram.getMean());
+                values.put("p50", histogram.getPercentile(50));
+                values.put("p99", histogram.getPercentile(99));
+                values.put("max", histogram.getMax());
+                List<List<Number>> buckets = new ArrayList<>();
+                for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+                    if (histogram.getBucket(bucket) > 0) {
+                        buckets.add(Arrays.asList(DeviationHistogram.upperBound(bucket), histogram.getBucket(bucket)));
+                    }
+                }
+                values.put("buckets", buckets);
+                // One field per line; json-simple writes NaN and infinite numbers as null
+                writer.write("  \"" + JSONValue.escape(FIELDS[field]) + "\": " + JSONValue.toJSONString(values)
+                        + (field < FIELDS.length - 1 ? ",\n" : "\n"));
+            }
+            writer.write("}\n");
+        }
+    }
+}
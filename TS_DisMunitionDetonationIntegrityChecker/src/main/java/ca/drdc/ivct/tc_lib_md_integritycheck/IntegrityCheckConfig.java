@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Settings of the integrity checker that are not part of the IVCT TcParam.json.
+ * <p>
+ * Values are read from a properties file of the classpath. Each of them can be
+ * overridden with a system property of the same name prefixed by {@value #SYSTEM_PROPERTY_PREFIX}.
+ */
+public class IntegrityCheckConfig {
+
+    private static Logger logger = LoggerFactory.getLogger(IntegrityCheckConfig.class);
+
+    public static final String DEFAULT_CONFIG_FILE = "/config/integritycheck.properties";
+    public static final String SYSTEM_PROPERTY_PREFIX = "integritycheck.";
+
+    private static final String POLL_INTERVAL = "pollInterval";
+    private static final String IDLE_TIMEOUT = "idleTimeout";
+    private static final String MAXIMUM_WAITING_PERIOD = "maximumWaitingPeriod";
+    private static final String VERDICT_PARALLELISM = "verdictParallelism";
+    private static final String REPORT_DIRECTORY = "reportDirectory";
+    private static final String DEVIATION_STATISTICS = "deviationStatistics";
+    private static final String PRIMITIVE_SPATIAL_CHECK = "primitiveSpatialCheck";
+    private static final String FAD_CACHE = "fadCache";
+    private static final String FAD_CACHE_DIRECTORY = "fadCacheDirectory";
+    private static final String FAD_LOAD_PARALLELISM = "fadLoadParallelism";
+    private static final String CAPTURE_MEMORY_LIMIT = "captureMemoryLimit";
+    private static final String CAPTURE_SPILL_DIRECTORY = "captureSpillDirectory";
+    private static final String RAW_RECEIVER = "rawReceiver";
+    private static final String RECEIVE_PORT = "receivePort";
+    private static final String RECEIVE_BUFFER_SIZE = "receiveBufferSize";
+    private static final String EXERCISE_ID = "exerciseId";
+    private static final String METRICS = "metrics";
+    private static final String MULTI_SUT = "multiSut";
+    private static final String SOAK_INTERVAL = "soakInterval";
+    private static final String SOAK_WINDOW = "soakWindow";
+    private static final String ARRIVAL_ANALYSIS = "arrivalAnalysis";
+    private static final String RECORD_FILE = "recordFile";
+    private static final String REPLAY_FILE = "replayFile";
+    private static final String REPLAY_SPEED = "replaySpeed";
+    private static final String METRICS_PORT = "metricsPort";
+
+    private final Properties properties = new Properties();
+
+    /**
+     * interval in milliseconds at which received PDUs are evaluated
+     */
+    private long pollInterval;
+
+    /**
+     * seconds without any new PDU after which the listening period ends, 0 to disable
+     */
+    private long idleTimeout;
+
+    /**
+     * maximum listening period in seconds, 0 to use the waitingPeriod of the TcParam.json
+     */
+    private long maximumWaitingPeriod;
+
+    /**
+     * number of threads comparing the FAD entries, 0 for the number of available processors
+     */
+    private int verdictParallelism;
+
+    /**
+     * directory of the JSON Lines verdict reports
+     */
+    private Path reportDirectory;
+
+    /**
+     * true to log and write the distribution of the deviation of each spatial field
+     */
+    private boolean deviationStatistics;
+
+    /**
+     * true to check the spatial information in bulk on primitive arrays, on the largest component difference
+     */
+    private boolean primitiveSpatialCheck;
+
+    /**
+     * true to load the FAD from its compiled binary form, rebuilt when a CSV file changes
+     */
+    private boolean fadCache;
+
+    /**
+     * directory of the compiled FAD files
+     */
+    private Path fadCacheDirectory;
+
+    /**
+     * number of FAD CSV files parsed at once, 0 for the number of available processors
+     */
+    private int fadLoadParallelism;
+
+    /**
+     * bytes of received PDUs kept in memory before spilling to disk
+     */
+    private long captureMemoryLimit;
+
+    /**
+     * directory of the capture spill file
+     */
+    private Path captureSpillDirectory;
+
+    /**
+     * true to receive and prefilter the DIS datagrams directly instead of using the PDUs of the IVCT DIS plugin
+     */
+    private boolean rawReceiver;
+
+    /**
+     * UDP port of the DIS traffic in raw receiver mode
+     */
+    private int receivePort;
+
+    /**
+     * socket receive buffer size in bytes in raw receiver mode
+     */
+    private int receiveBufferSize;
+
+    /**
+     * exercise identifier kept in raw receiver mode, 0 for any
+     */
+    private int exerciseId;
+
+    /**
+     * true to publish live metrics over JMX and HTTP
+     */
+    private boolean metrics;
+
+    /**
+     * TCP port of the Prometheus metrics endpoint, 0 for JMX only
+     */
+    private int metricsPort;
+
+    /**
+     * true to give one verdict per site/application of the FAD event identifiers
+     */
+    private boolean multiSut;
+
+    /**
+     * interval in seconds between the verdicts of the soak mode, 0 for a single verdict
+     */
+    private long soakInterval;
+
+    /**
+     * length in seconds of the rolling window verified at each soak interval
+     */
+    private long soakWindow;
+
+    /**
+     * true to analyse the loss, reordering and jitter of the received DetonationPdus in raw receiver mode
+     */
+    private boolean arrivalAnalysis;
+
+    /**
+     * file the received DetonationPdus are recorded to in raw receiver mode, or null
+     */
+    private Path recordFile;
+
+    /**
+     * recording to verify instead of listening to the network, or null
+     */
+    private Path replayFile;
+
+    /**
+     * replay speed as a multiple of real time, 0 for as fast as possible
+     */
+    private double replaySpeed;
+
+    /**
+     * load the integrity checker configuration
+     * @param fileName config file from the resource folder
+     */
+    public IntegrityCheckConfig(String fileName) {
+        try (InputStream inputStream = this.getClass().getResourceAsStream(fileName)) {
+            if (inputStream != null) {
+                properties.load(inputStream);
+            } else {
+                logger.warn("Could not find the configuration file {}, using default values.", fileName);
+            }
+        } catch (IOException e) {
+            logger.error("Could not read the configuration file {}, using default values.", fileName, e);
+        }
+
+        pollInterval = getLongProperty(POLL_INTERVAL, 100);
+        idleTimeout = getLongProperty(IDLE_TIMEOUT, 0);
+        maximumWaitingPeriod = getLongProperty(MAXIMUM_WAITING_PERIOD, 0);
+        verdictParallelism = (int) getLongProperty(VERDICT_PARALLELISM, 0);
+        String directory = getProperty(REPORT_DIRECTORY, "");
+        reportDirectory = Paths.get(directory.isEmpty() ? System.getProperty("java.io.tmpdir") : directory);
+        deviationStatistics = Boolean.parseBoolean(getProperty(DEVIATION_STATISTICS, "false"));
+        primitiveSpatialCheck = Boolean.parseBoolean(getProperty(PRIMITIVE_SPATIAL_CHECK, "false"));
+        fadCache = Boolean.parseBoolean(getProperty(FAD_CACHE, "false"));
+        String cacheDirectory = getProperty(FAD_CACHE_DIRECTORY, "");
+        fadCacheDirectory = cacheDirectory.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "md-fad-cache") : Paths.get(cacheDirectory);
+        fadLoadParallelism = (int) getLongProperty(FAD_LOAD_PARALLELISM, 0);
+        captureMemoryLimit = getLongProperty(CAPTURE_MEMORY_LIMIT, 256) * 1024 * 1024;
+        String spillDirectory = getProperty(CAPTURE_SPILL_DIRECTORY, "");
+        captureSpillDirectory = spillDirectory.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir")) : Paths.get(spillDirectory);
+        rawReceiver = Boolean.parseBoolean(getProperty(RAW_RECEIVER, "false"));
+        receivePort = (int) getLongProperty(RECEIVE_PORT, 3001);
+        receiveBufferSize = (int) getLongProperty(RECEIVE_BUFFER_SIZE, 4 * 1024 * 1024);
+        exerciseId = (int) getLongProperty(EXERCISE_ID, 0);
+        metrics = Boolean.parseBoolean(getProperty(METRICS, "false"));
+        metricsPort = (int) getLongProperty(METRICS_PORT, 9464);
+        multiSut = Boolean.parseBoolean(getProperty(MULTI_SUT, "false"));
+        soakInterval = getLongProperty(SOAK_INTERVAL, 0);
+        soakWindow = getLongProperty(SOAK_WINDOW, 0);
+        if (soakWindow <= 0) {
+            soakWindow = 2 * soakInterval;
+        }
+        arrivalAnalysis = Boolean.parseBoolean(getProperty(ARRIVAL_ANALYSIS, "false"));
+        String record = getProperty(RECORD_FILE, "");
+        recordFile = record.isEmpty() ? null : Paths.get(record);
+        String replay = getProperty(REPLAY_FILE, "");
+        replayFile = replay.isEmpty() ? null : Paths.get(replay);
+        String speed = getProperty(REPLAY_SPEED, "0");
+        try {
+            replaySpeed = Double.parseDouble(speed);
+        } catch (NumberFormatException e) {
+            logger.error("Invalid value {} for {}, using {}.", speed, REPLAY_SPEED, 0);
+        }
+    }
+
+    private String getProperty(String key, String defaultValue) {
+        return System.getProperty(SYSTEM_PROPERTY_PREFIX + key, properties.getProperty(key, defaultValue)).trim();
+    }
+
+    private long getLongProperty(String key, long defaultValue) {
+        String value = getProperty(key, Long.toString(defaultValue));
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.error("Invalid value {} for {}, using {}.", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public long getMaximumWaitingPeriod() {
+        return maximumWaitingPeriod;
+    }
+
+    public int getVerdictParallelism() {
+        return verdictParallelism;
+    }
+
+    public Path getReportDirectory() {
+        return reportDirectory;
+    }
+
+    public boolean isDeviationStatistics() {
+        return deviationStatistics;
+    }
+
+    public boolean isFadCache() {
+        return fadCache;
+    }
+
+    public Path getFadCacheDirectory() {
+        return fadCacheDirectory;
+    }
+
+    public int getFadLoadParallelism() {
+        return fadLoadParallelism;
+    }
+
+    public long getCaptureMemoryLimit() {
+        return captureMemoryLimit;
+    }
+
+    public Path getCaptureSpillDirectory() {
+        return captureSpillDirectory;
+    }
+
+    public boolean isRawReceiver() {
+        return rawReceiver;
+    }
+
+    public int getReceivePort() {
+        return receivePort;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public int getExerciseId() {
+        return exerciseId;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public boolean isMultiSut() {
+        return multiSut;
+    }
+
+    public long getSoakInterval() {
+        return soakInterval;
+    }
+
+    public long getSoakWindow() {
+        return soakWindow;
+    }
+
+    public boolean isArrivalAnalysis() {
+        return arrivalAnalysis;
+    }
+
+    public Path getRecordFile() {
+        return recordFile;
+    }
+
+    public Path getReplayFile() {
+        return replayFile;
+    }
+
+    public double getReplaySpeed() {
+        return replaySpeed;
+    }
+
+    public boolean isPrimitiveSpatialCheck() {
+        return primitiveSpatialCheck;
+    }
+}
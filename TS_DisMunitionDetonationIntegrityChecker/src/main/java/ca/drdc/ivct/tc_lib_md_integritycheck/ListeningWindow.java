@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+
+/**
+ * Wait for munition detonations until the expected ones have been received.
+ * <p>
+ * The window ends at the first of these events:
+ * <ul>
+ * <li>the completion condition is met,</li>
+ * <li>no new PDU arrived during the idle timeout, which starts with the first PDU and restarts on each new one,</li>
+ * <li>the maximum listening period is over.</li>
+ * </ul>
+ * Unlike {@link CountdownTimer}, the window does not wait for whole seconds: it
+ * checks for new PDUs and for completion at the poll interval.
+ */
+public class ListeningWindow {
+
+    public enum Outcome {
+        COMPLETE, IDLE_TIMEOUT, MAXIMUM_REACHED
+    }
+
+    private final long maximumNanos;
+    private final long idleTimeoutNanos;
+    private final long pollIntervalMillis;
+    private final Logger logger;
+    private volatile long lastActivity;
+
+    /**
+     * @param maximumMillis maximum listening period in milliseconds
+     * @param idleTimeoutMillis end the window when no PDU arrived for this many milliseconds, 0 to disable
+     * @param pollIntervalMillis interval in milliseconds at which new PDUs are looked for
+     * @param logger the logger
+     */
+    public ListeningWindow(long maximumMillis, long idleTimeoutMillis, long pollIntervalMillis, Logger logger) {
+        this.maximumNanos = TimeUnit.MILLISECONDS.toNanos(maximumMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.pollIntervalMillis = Math.max(1, pollIntervalMillis);
+        this.logger = logger;
+    }
+
+    /**
+     * Restart the idle timeout.
+     */
+    public void resetTimer() {
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Wait until the window ends.
+     *
+     * @param receivedCount returns the number of PDUs received so far
+     * @param complete returns true once every expected PDU has been received
+     * @return the reason the window ended
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public Outcome await(LongSupplier receivedCount, BooleanSupplier complete) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + maximumNanos;
+        long lastLoggedSecond = TimeUnit.NANOSECONDS.toSeconds(maximumNanos);
+        long lastReceivedCount = receivedCount.getAsLong();
+        boolean receiving = false;
+        resetTimer();
+
+        while (true) {
+            long received = receivedCount.getAsLong();
+            if (received != lastReceivedCount) {
+                lastReceivedCount = received;
+                receiving = true;
+                resetTimer();
+            }
+            if (complete.getAsBoolean()) {
+                return Outcome.COMPLETE;
+            }
+            long now = System.nanoTime();
+            if (now - deadline >= 0) {
+                return Outcome.MAXIMUM_REACHED;
+            }
+            if (receiving && idleTimeoutNanos > 0 && now - lastActivity >= idleTimeoutNanos) {
+                return Outcome.IDLE_TIMEOUT;
+            }
+
+            long remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(deadline - now);
+            if (remainingSeconds < lastLoggedSecond) {
+                lastLoggedSecond = remainingSeconds;
+                logger.info("Listening for another {} seconds.", remainingSeconds);
+            }
+
+            long waitMillis = Math.min(pollIntervalMillis, TimeUnit.NANOSECONDS.toMillis(deadline - now) + 1);
+            TimeUnit.MILLISECONDS.sleep(waitMillis);
+        }
+    }
+}
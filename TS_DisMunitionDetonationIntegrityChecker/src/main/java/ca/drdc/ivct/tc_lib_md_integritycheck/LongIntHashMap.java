@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys to non-negative int values without boxing, using open addressing
+ * with linear probing. Entries cannot be removed one by one.
+ * This class is not thread-safe; concurrent reads are safe once writes are over.
+ */
+public class LongIntHashMap {
+
+    /**
+     * Value returned for an absent key.
+     */
+    public static final int MISSING = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * @param expectedSize number of entries that fit without resizing
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        resizeThreshold = capacity / 4 * 3;
+    }
+
+    private int firstSlotOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+    }
+
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = firstSlotOf(key);
+        while (values[slot] != MISSING && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @param key the key
+     * @return the number of slots read to find the key, or to find that it is absent
+     */
+    int probeCount(long key) {
+        return ((slotOf(key) - firstSlotOf(key)) & (keys.length - 1)) + 1;
+    }
+
+    /**
+     * @param key the key
+     * @return its value, or {@link #MISSING}
+     */
+    public int get(long key) {
+        return values[slotOf(key)];
+    }
+
+    /**
+     * @param key the key
+     * @return true if the key has a value
+     */
+    public boolean containsKey(long key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * Associate a value with a key, unless the key already has one.
+     *
+     * @param key the key
+     * @param value a non-negative value
+     * @return the current value of the key, or {@link #MISSING} if the value was added
+     */
+    public int putIfAbsent(long key, int value) {
+        int slot = slotOf(key);
+        if (values[slot] != MISSING) {
+            return values[slot];
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash();
+        }
+        return MISSING;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldValues[slot] != MISSING) {
+                int newSlot = slotOf(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    /**
+     * Remove every entry, keeping the capacity.
+     */
+    public void clear() {
+        Arrays.fill(values, MISSING);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
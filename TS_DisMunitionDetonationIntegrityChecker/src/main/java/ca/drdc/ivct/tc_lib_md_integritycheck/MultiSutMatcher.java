@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import edu.nps.moves.dis.DetonationPdu;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes the received DetonationPdus of several systems under test to one
+ * {@link MunitionDetonationMatcher} per SUT.
+ * <p>
+ * A SUT is identified by the site and application numbers of the event identifiers it
+ * issues. The FAD is split along the same key, so each SUT is checked against its own
+ * munition detonations and gets its own verdict. PDUs of simulations that have no
+ * munition detonation in the FAD are counted by event key and dropped.
+ * <p>
+ * The matchers share one {@link DetonationCapture}, since event keys are unique
+ * across simulations.
+ */
+public class MultiSutMatcher implements DetonationSink {
+
+    private final MunitionDetonationMatcher[] matchers;
+    private final List<MunitionDetonationMatcher> matcherList;
+    private final int[] simulations;
+    private final LongIntHashMap matcherBySimulation;
+    private final LongIntHashMap foreignKeys = new LongIntHashMap(64);
+    private final LatencyHistogram decodeLatency;
+    private final LatencyHistogram convertLatency;
+    private long duplicateCount;
+
+    /**
+     * @param fad the munition detonations of the FAD of every SUT
+     * @param capture the store of the received PDUs
+     */
+    public MultiSutMatcher(List<MunitionDetonation> fad, DetonationCapture capture) {
+        this(fad, capture, new LatencyHistogram(), new LatencyHistogram());
+    }
+
+    /**
+     * @param fad the munition detonations of the FAD of every SUT
+     * @param capture the store of the received PDUs
+     * @param decodeLatency histogram of the decoding times
+     * @param convertLatency histogram of the RPR conversion times
+     */
+    MultiSutMatcher(List<MunitionDetonation> fad, DetonationCapture capture, LatencyHistogram decodeLatency,
+            LatencyHistogram convertLatency) {
+        this.decodeLatency = decodeLatency;
+        this.convertLatency = convertLatency;
+        long[] fadKeys = MunitionDetonationMatcher.eventKeysOf(fad);
+        Map<Integer, List<Integer>> fadIndexesBySimulation = new LinkedHashMap<>();
+        for (int i = 0; i < fadKeys.length; i++) {
+            fadIndexesBySimulation.computeIfAbsent(DetonationPduLayout.simulationOf(fadKeys[i]), s -> new ArrayList<>()).add(i);
+        }
+
+        matchers = new MunitionDetonationMatcher[fadIndexesBySimulation.size()];
+        simulations = new int[matchers.length];
+        matcherBySimulation = new LongIntHashMap(matchers.length);
+        int sut = 0;
+        for (Map.Entry<Integer, List<Integer>> partition : fadIndexesBySimulation.entrySet()) {
+            List<Integer> fadIndexes = partition.getValue();
+            List<MunitionDetonation> sutFad = new ArrayList<>(fadIndexes.size());
+            long[] sutKeys = new long[fadIndexes.size()];
+            for (int i = 0; i < sutKeys.length; i++) {
+                sutFad.add(fad.get(fadIndexes.get(i)));
+                sutKeys[i] = fadKeys[fadIndexes.get(i)];
+            }
+            matchers[sut] = new MunitionDetonationMatcher(sutFad, sutKeys, capture, decodeLatency, convertLatency);
+            simulations[sut] = partition.getKey();
+            matcherBySimulation.putIfAbsent(partition.getKey(), sut);
+            sut++;
+        }
+        matcherList = Collections.unmodifiableList(Arrays.asList(matchers));
+    }
+
+    /**
+     * @param simulation the site and application numbers, as returned by {@link DetonationPduLayout#simulationOf(long)}
+     * @return the simulation address as site.application
+     */
+    public static String simulationName(int simulation) {
+        return (simulation >>> 16) + "." + (simulation & 0xFFFF);
+    }
+
+    private MunitionDetonationMatcher route(long eventKey) {
+        int sut = matcherBySimulation.get(DetonationPduLayout.simulationOf(eventKey));
+        return sut == LongIntHashMap.MISSING ? null : matchers[sut];
+    }
+
+    /**
+     * Count the event of a simulation that is not in the FAD.
+     *
+     * @return true if it is the first occurrence of the event
+     */
+    private boolean countForeign(long eventKey) {
+        if (foreignKeys.putIfAbsent(eventKey, 0) != LongIntHashMap.MISSING) {
+            duplicateCount++;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean admit(long eventKey) {
+        MunitionDetonationMatcher matcher = route(eventKey);
+        if (matcher == null) {
+            countForeign(eventKey);
+            return false;
+        }
+        return matcher.admit(eventKey);
+    }
+
+    @Override
+    public boolean offer(long eventKey, ByteBuffer encodedPdu) {
+        MunitionDetonationMatcher matcher = route(eventKey);
+        return matcher == null ? countForeign(eventKey) : matcher.offer(eventKey, encodedPdu);
+    }
+
+    @Override
+    public boolean offer(DetonationPdu pdu) {
+        long eventKey = DetonationPduLayout.eventKey(pdu.getEventID());
+        MunitionDetonationMatcher matcher = route(eventKey);
+        return matcher == null ? countForeign(eventKey) : matcher.offer(pdu);
+    }
+
+    /**
+     * @return one matcher per SUT, in order of first appearance in the FAD
+     */
+    public List<MunitionDetonationMatcher> getMatchers() {
+        return matcherList;
+    }
+
+    /**
+     * @param sut index of a SUT in {@link #getMatchers()}
+     * @return the site and application numbers of the SUT
+     */
+    public int getSimulation(int sut) {
+        return simulations[sut];
+    }
+
+    /**
+     * @return the time taken to decode the received PDUs of every SUT for the verdict
+     */
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    /**
+     * @return the time taken to convert the received PDUs of every SUT to RPR for the verdict
+     */
+    public LatencyHistogram getConvertLatency() {
+        return convertLatency;
+    }
+
+    /**
+     * @return the number of distinct events received from simulations without munition detonations in the FAD
+     */
+    public int getUnknownSimulationEventCount() {
+        return foreignKeys.size();
+    }
+
+    @Override
+    public int getReceivedCount() {
+        int count = foreignKeys.size();
+        for (MunitionDetonationMatcher matcher : matchers) {
+            count += matcher.getReceivedCount();
+        }
+        return count;
+    }
+
+    @Override
+    public int getForeignCount() {
+        int count = foreignKeys.size();
+        for (MunitionDetonationMatcher matcher : matchers) {
+            count += matcher.getForeignCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getDuplicateCount() {
+        long count = duplicateCount;
+        for (MunitionDetonationMatcher matcher : matchers) {
+            count += matcher.getDuplicateCount();
+        }
+        return count;
+    }
+
+    @Override
+    public int getMatchedCount() {
+        int count = 0;
+        for (MunitionDetonationMatcher matcher : matchers) {
+            count += matcher.getMatchedCount();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isComplete() {
+        for (MunitionDetonationMatcher matcher : matchers) {
+            if (!matcher.isComplete()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        for (MunitionDetonationMatcher matcher : matchers) {
+            matcher.reset();
+        }
+        foreignKeys.clear();
+        duplicateCount = 0;
+    }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.fom.base.structs.RelativePositionStruct;
+import ca.drdc.ivct.fom.base.structs.VelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.WorldLocationStruct;
+import ca.drdc.ivct.fom.utils.MunitionDetonationEqualUtils;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the munition detonations of the FAD with their received match.
+ * <p>
+ * A single instance is built per test run and can be shared between threads: each
+ * thread uses its own {@link MunitionDetonationEqualUtils}, since that class gives
+ * no thread-safety guarantee.
+ * <p>
+ * With the primitive spatial check, {@link #compareAll} copies the spatial information of
+ * each block of FAD entries and of their matches into {@link SpatialArrays} and checks
+ * it in bulk: a struct matches if the largest absolute difference between its components
+ * is within its threshold, or is exactly equal if the TcParam.json gives no threshold.
+ * Only the parameters are still checked by {@link MunitionDetonationEqualUtils}.
+ */
+public class MunitionDetonationComparator {
+
+    /** Number of FAD entries compared together, small enough for their arrays to stay in cache */
+    private static final int BLOCK_SIZE = 1024;
+
+    private final ThreadLocal<MunitionDetonationEqualUtils> equalUtils;
+    private final Map<String, Double> spatialThreshold;
+    private final boolean primitiveSpatialCheck;
+    private final double locationThreshold;
+    private final double velocityThreshold;
+
+    /**
+     * @param spatialThreshold the thresholds of the spatial checks, keyed by field name
+     */
+    public MunitionDetonationComparator(Map<String, Double> spatialThreshold) {
+        this(spatialThreshold, false);
+    }
+
+    /**
+     * @param spatialThreshold the thresholds of the spatial checks, keyed by field name
+     * @param primitiveSpatialCheck true to check the spatial information in bulk on primitive arrays
+     */
+    public MunitionDetonationComparator(Map<String, Double> spatialThreshold, boolean primitiveSpatialCheck) {
+        this.equalUtils = ThreadLocal.withInitial(() -> new MunitionDetonationEqualUtils(spatialThreshold));
+        this.spatialThreshold = spatialThreshold;
+        this.primitiveSpatialCheck = primitiveSpatialCheck;
+        this.locationThreshold = threshold(spatialThreshold, SpatialDeviation.WORLD_LOCATION_THRESHOLD);
+        this.velocityThreshold = threshold(spatialThreshold, SpatialDeviation.VELOCITY_THRESHOLD);
+    }
+
+    private static double threshold(Map<String, Double> spatialThreshold, String key) {
+        Double value = spatialThreshold == null ? null : spatialThreshold.get(key);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Check one munition detonation of the FAD.
+     *
+     * @param fadMunitionDetonation the munition detonation of the FAD
+     * @param receivedMunitionDetonation the received munition detonation with the same identifier, or null
+     * @return the result of the checks
+     */
+    public DetonationCheckResult compare(MunitionDetonation fadMunitionDetonation, MunitionDetonation receivedMunitionDetonation) {
+        if (receivedMunitionDetonation == null) {
+            return DetonationCheckResult.notFound(fadMunitionDetonation.getEventIdentifier());
+        }
+        MunitionDetonationEqualUtils utils = equalUtils.get();
+        WorldLocationStruct fadLocation = fadMunitionDetonation.getDetonationLocation();
+        WorldLocationStruct receivedLocation = receivedMunitionDetonation.getDetonationLocation();
+        VelocityVectorStruct fadVelocity = fadMunitionDetonation.getFinalVelocityVector();
+        VelocityVectorStruct receivedVelocity = receivedMunitionDetonation.getFinalVelocityVector();
+        RelativePositionStruct fadRelativePosition = fadMunitionDetonation.getRelativeDetonationLocation();
+        RelativePositionStruct receivedRelativePosition = receivedMunitionDetonation.getRelativeDetonationLocation();
+
+        return new DetonationCheckResult(fadMunitionDetonation.getEventIdentifier(), true,
+                utils.areMunitionDetonationParametersEquals(fadMunitionDetonation, receivedMunitionDetonation),
+                utils.worldLocationEquals(fadLocation, receivedLocation),
+                utils.velocityEquals(fadVelocity, receivedVelocity),
+                utils.relativePositionEquals(fadRelativePosition, receivedRelativePosition),
+                SpatialDeviation.of(fadLocation, receivedLocation),
+                SpatialDeviation.of(fadVelocity, receivedVelocity),
+                SpatialDeviation.of(fadRelativePosition, receivedRelativePosition));
+    }
+
+    /**
+     * Check every munition detonation of the FAD in parallel.
+     *
+     * @param fad the munition detonations of the FAD
+     * @param matchLookup returns the received match of the FAD entry at an index, or null. Must be safe for concurrent reads.
+     * @param parallelism number of worker threads, 0 for the number of available processors
+     * @return the results, in FAD order
+     * @throws InterruptedException if interrupted while waiting for the results
+     */
+    public List<DetonationCheckResult> compareAll(List<MunitionDetonation> fad,
+            IntFunction<MunitionDetonation> matchLookup, int parallelism) throws InterruptedException {
+        return compareAll(fad, matchLookup, parallelism, null);
+    }
+
+    /**
+     * Check every munition detonation of the FAD in parallel, recording the deviations
+     * of its spatial fields in the same pass.
+     *
+     * @param fad the munition detonations of the FAD
+     * @param matchLookup returns the received match of the FAD entry at an index, or null. Must be safe for concurrent reads.
+     * @param parallelism number of worker threads, 0 for the number of available processors
+     * @param statistics receives the deviations of every FAD entry and its match, or null
+     * @return the results, in FAD order
+     * @throws InterruptedException if interrupted while waiting for the results
+     */
+    public List<DetonationCheckResult> compareAll(List<MunitionDetonation> fad,
+            IntFunction<MunitionDetonation> matchLookup, int parallelism, DeviationStatistics statistics)
+            throws InterruptedException {
+        DetonationCheckResult[] results = new DetonationCheckResult[fad.size()];
+        int blockCount = (results.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ForkJoinPool pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        try {
+            // Each task writes the slots of its own block, which keeps the results in FAD order.
+            pool.submit(() -> IntStream.range(0, blockCount).parallel().forEach(block -> {
+                int from = block * BLOCK_SIZE;
+                compareBlock(fad, matchLookup, from, Math.min(results.length, from + BLOCK_SIZE), results, statistics);
+            })).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Munition detonation comparison failed", cause);
+        } finally {
+            pool.shutdown();
+        }
+        return Arrays.asList(results);
+    }
+
+    private void compareBlock(List<MunitionDetonation> fad, IntFunction<MunitionDetonation> matchLookup,
+            int from, int to, DetonationCheckResult[] results, DeviationStatistics statistics) {
+        int count = to - from;
+        SpatialArrays expected = primitiveSpatialCheck || statistics != null ? new SpatialArrays(count) : null;
+        SpatialArrays actual = expected == null ? null : new SpatialArrays(count);
+        boolean[] parametersMatch = primitiveSpatialCheck ? new boolean[count] : null;
+        MunitionDetonationEqualUtils utils = equalUtils.get();
+        for (int i = 0; i < count; i++) {
+            MunitionDetonation fadMunitionDetonation = fad.get(from + i);
+            MunitionDetonation receivedMunitionDetonation = matchLookup.apply(from + i);
+            if (expected != null) {
+                expected.set(i, fadMunitionDetonation);
+                actual.set(i, receivedMunitionDetonation);
+            }
+            if (receivedMunitionDetonation == null) {
+                results[from + i] = DetonationCheckResult.notFound(fadMunitionDetonation.getEventIdentifier());
+            } else if (primitiveSpatialCheck) {
+                parametersMatch[i] = utils.areMunitionDetonationParametersEquals(fadMunitionDetonation,
+                        receivedMunitionDetonation);
+            } else {
+                results[from + i] = compare(fadMunitionDetonation, receivedMunitionDetonation);
+            }
+        }
+
+        if (statistics != null) {
+            DeviationStatistics blockStatistics = new DeviationStatistics(spatialThreshold);
+            blockStatistics.record(expected, actual, count);
+            synchronized (statistics) {
+                statistics.merge(blockStatistics);
+            }
+        }
+        if (!primitiveSpatialCheck) {
+            return;
+        }
+
+        double[][] deviations = new double[SpatialArrays.COMPONENTS][];
+        deviations[SpatialArrays.LOCATION] = new double[count];
+        deviations[SpatialArrays.VELOCITY] = new double[count];
+        deviations[SpatialArrays.RELATIVE_POSITION] = new double[count];
+        expected.deviations(actual, count, deviations);
+        double[] locationDeviations = deviations[SpatialArrays.LOCATION];
+        double[] velocityDeviations = deviations[SpatialArrays.VELOCITY];
+        double[] relativePositionDeviations = deviations[SpatialArrays.RELATIVE_POSITION];
+        for (int i = 0; i < count; i++) {
+            if (results[from + i] != null) {
+                continue;
+            }
+            // NaN deviations, from missing structs, compare false and fail the check
+            results[from + i] = new DetonationCheckResult(fad.get(from + i).getEventIdentifier(), true,
+                    parametersMatch[i],
+                    locationDeviations[i] <= locationThreshold,
+                    velocityDeviations[i] <= velocityThreshold,
+                    relativePositionDeviations[i] <= locationThreshold,
+                    locationDeviations[i], velocityDeviations[i], relativePositionDeviations[i]);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import de.fraunhofer.iosb.tc_lib.converter.DisModelConverter;
+import edu.nps.moves.dis.DetonationPdu;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pairs the munition detonations of the federation agreement document (FAD) with the
+ * received ones using their event identifier as key.
+ * <p>
+ * Event identifiers are compared in their DIS form, packed into a long by
+ * {@link DetonationPduLayout#eventKey(int, int, int)}; the key of each FAD entry is
+ * computed once from its DIS conversion. Received PDUs are kept in a
+ * {@link DetonationCapture}, which drops repeats at ingest so only the first received
+ * occurrence of an event identifier is kept. Each FAD entry is then matched with a
+ * single keyed lookup, so matching is linear in the FAD size.
+ * <p>
+ * Only the content of FAD events is ever compared, so the PDUs of other events are
+ * counted by key but not stored. {@link #admit(long)} lets a receiver make that
+ * decision from the event key alone, before the PDU is decoded.
+ * <p>
+ * PDUs are offered from a single thread. Once ingestion is over, matches can be looked
+ * up concurrently.
+ */
+public class MunitionDetonationMatcher implements DetonationSink {
+
+    private final List<MunitionDetonation> fad;
+    private final long[] fadKeys;
+    private final LongIntHashMap fadIndexByKey;
+    private final DetonationCapture capture;
+    private final LongIntHashMap foreignKeys = new LongIntHashMap(64);
+    private final LatencyHistogram decodeLatency;
+    private final LatencyHistogram convertLatency;
+    private long duplicateCount;
+    private volatile int capturedCount;
+    private volatile int matchedCount;
+
+    /**
+     * @param fad the munition detonations of the FAD, in FAD order
+     * @param capture the store of the received PDUs
+     */
+    public MunitionDetonationMatcher(List<MunitionDetonation> fad, DetonationCapture capture) {
+        this(fad, eventKeysOf(fad), capture, new LatencyHistogram(), new LatencyHistogram());
+    }
+
+    /**
+     * @param fad the munition detonations of the FAD, in FAD order
+     * @param fadKeys the event key of each FAD entry
+     * @param capture the store of the received PDUs, which can be shared by several matchers
+     * @param decodeLatency histogram of the decoding times
+     * @param convertLatency histogram of the RPR conversion times
+     */
+    MunitionDetonationMatcher(List<MunitionDetonation> fad, long[] fadKeys, DetonationCapture capture,
+            LatencyHistogram decodeLatency, LatencyHistogram convertLatency) {
+        this.fad = Collections.unmodifiableList(fad);
+        this.fadKeys = fadKeys;
+        this.capture = capture;
+        this.decodeLatency = decodeLatency;
+        this.convertLatency = convertLatency;
+        this.fadIndexByKey = new LongIntHashMap(fad.size());
+        for (int i = 0; i < fadKeys.length; i++) {
+            fadIndexByKey.putIfAbsent(fadKeys[i], i);
+        }
+    }
+
+    /**
+     * @param fad munition detonations
+     * @return the event key of each of them, from their DIS conversion
+     */
+    static long[] eventKeysOf(List<MunitionDetonation> fad) {
+        long[] keys = new long[fad.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = DetonationPduLayout.eventKey(DisModelConverter.rprMunitionDetonationToDIS(fad.get(i)).getEventID());
+        }
+        return keys;
+    }
+
+    @Override
+    public boolean offer(DetonationPdu pdu) {
+        long eventKey = DetonationPduLayout.eventKey(pdu.getEventID());
+        // Only the PDUs worth keeping pay for the encoding
+        if (!admit(eventKey)) {
+            return false;
+        }
+        return offer(eventKey, DetonationPduLayout.encode(pdu));
+    }
+
+    /**
+     * Events that are not in the FAD and repeats are counted here and need not be offered.
+     *
+     * @param eventKey the event key of a received PDU
+     * @return true if the PDU is the first occurrence of a FAD event and must be offered
+     */
+    @Override
+    public boolean admit(long eventKey) {
+        if (fadIndexByKey.containsKey(eventKey)) {
+            if (capture.contains(eventKey)) {
+                duplicateCount++;
+                return false;
+            }
+            return true;
+        }
+        if (foreignKeys.putIfAbsent(eventKey, 0) != LongIntHashMap.MISSING) {
+            duplicateCount++;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean offer(long eventKey, ByteBuffer encodedPdu) {
+        if (!capture.add(eventKey, encodedPdu)) {
+            duplicateCount++;
+            return false;
+        }
+        capturedCount++;
+        if (fadIndexByKey.containsKey(eventKey)) {
+            matchedCount++;
+        }
+        return true;
+    }
+
+    /**
+     * @param fadIndex the index of a munition detonation of the FAD
+     * @return the received munition detonation with the same event identifier, or null if none was received
+     */
+    public MunitionDetonation getMatch(int fadIndex) {
+        ByteBuffer encodedPdu = capture.get(fadKeys[fadIndex]);
+        if (encodedPdu == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        DetonationPdu pdu = DetonationPduLayout.decode(encodedPdu);
+        long decoded = System.nanoTime();
+        decodeLatency.record(decoded - start);
+        MunitionDetonation munitionDetonation = DisModelConverter.disMunitionDetonationToRpr(pdu);
+        convertLatency.recordSince(decoded);
+        return munitionDetonation;
+    }
+
+    /**
+     * @param eventKey an event key
+     * @return true if the FAD has a munition detonation with this event key
+     */
+    public boolean isInFad(long eventKey) {
+        return fadIndexByKey.containsKey(eventKey);
+    }
+
+    /**
+     * @param eventKey the event key of a received PDU
+     * @return the number of hash slots read to admit the PDU, then to look its capture up
+     */
+    int lookupProbes(long eventKey) {
+        return fadIndexByKey.probeCount(eventKey) + capture.lookupProbes(eventKey);
+    }
+
+    /**
+     * @param fadIndex the index of a munition detonation of the FAD
+     * @return its event key
+     */
+    public long getFadKey(int fadIndex) {
+        return fadKeys[fadIndex];
+    }
+
+    /**
+     * @return the munition detonations of the FAD, in FAD order
+     */
+    public List<MunitionDetonation> getFad() {
+        return fad;
+    }
+
+    @Override
+    public int getReceivedCount() {
+        return capturedCount + foreignKeys.size();
+    }
+
+    @Override
+    public int getForeignCount() {
+        return foreignKeys.size();
+    }
+
+    @Override
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    @Override
+    public int getMatchedCount() {
+        return matchedCount;
+    }
+
+    /**
+     * @return the time taken to decode the received PDUs looked up by {@link #getMatch(int)}
+     */
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    /**
+     * @return the time taken to convert the received PDUs looked up by {@link #getMatch(int)} to RPR
+     */
+    public LatencyHistogram getConvertLatency() {
+        return convertLatency;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return matchedCount == fadIndexByKey.size();
+    }
+
+    /**
+     * Also clears the capture, which is shared with the other matchers of a {@link MultiSutMatcher}.
+     */
+    @Override
+    public void reset() {
+        capture.clear();
+        foreignKeys.clear();
+        duplicateCount = 0;
+        capturedCount = 0;
+        matchedCount = 0;
+    }
+}
@@ -0,0 +1,424 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import edu.nps.moves.dis.DetonationPdu;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies the munition detonations received in a rolling window against the FAD at each
+ * interval, for as long as the SuT runs.
+ * <p>
+ * The received PDUs are kept in a ring of buckets, one per interval, each with its own
+ * capture. The rolling window is made of the last buckets completed: at each interval,
+ * every FAD entry is checked against its most recent copy in the window, and an entry
+ * is missing only if it was not received at all during the window. The oldest bucket
+ * then leaves the window, is reset and receives the next interval. Memory therefore
+ * stays bounded by the buckets of one window, however long the soak test runs. Each
+ * verdict gets the same checks as a TC_0001 run, and is appended to a JSON Lines time
+ * series.
+ * <p>
+ * The sink methods can be called from one receiving thread while {@link #run} runs in
+ * another; every offer takes a lock shared with the switch of buckets. The window should
+ * be at least as long as the SuT send period, so that it holds one send of every FAD
+ * event whatever the phase of the send cycle.
+ */
+public class SoakMonitor implements DetonationSink, Closeable {
+
+    /**
+     * The PDUs of one interval and the matchers that look them up.
+     */
+    private static class Bucket {
+        final DetonationCapture capture;
+        final DetonationSink sink;
+        final List<MunitionDetonationMatcher> matchers;
+
+        Bucket(DetonationCapture capture, DetonationSink sink, List<MunitionDetonationMatcher> matchers) {
+            this.capture = capture;
+            this.sink = sink;
+            this.matchers = matchers;
+        }
+    }
+
+    private final Bucket[] buckets;
+    private final int windowIntervals;
+    private final List<String> sutNames;
+    private final MunitionDetonationComparator comparator;
+    private final int parallelism;
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final LatencyHistogram convertLatency = new LatencyHistogram();
+    private final LatencyHistogram verifyLatency = new LatencyHistogram();
+
+    private volatile int active;
+    private int completedIntervals;
+    private volatile long windowCount;
+    private volatile long failedWindowCount;
+    private volatile int lastWindowMissing = -1;
+    private volatile long totalReceivedCount;
+
+    /**
+     * @param fad the munition detonations of the FAD
+     * @param multiSut true to give a verdict per site and application, see {@link MultiSutMatcher}
+     * @param windowIntervals number of intervals in the rolling window
+     * @param captureMemoryLimit bytes of received PDUs kept in memory per interval before spilling to disk
+     * @param captureSpillDirectory directory of the spill files
+     * @param comparator the checks of each FAD entry
+     * @param parallelism number of threads comparing the FAD entries of a window, 0 for the number of available processors
+     */
+    public SoakMonitor(List<MunitionDetonation> fad, boolean multiSut, int windowIntervals, long captureMemoryLimit,
+            Path captureSpillDirectory, MunitionDetonationComparator comparator, int parallelism) {
+        this.windowIntervals = Math.max(1, windowIntervals);
+        this.comparator = comparator;
+        this.parallelism = parallelism;
+        // The window, plus the bucket of the interval being received
+        buckets = new Bucket[this.windowIntervals + 1];
+        long[] fadKeys = MunitionDetonationMatcher.eventKeysOf(fad);
+        List<String> names = null;
+        for (int i = 0; i < buckets.length; i++) {
+            DetonationCapture capture = new DetonationCapture(captureMemoryLimit, captureSpillDirectory);
+            if (multiSut) {
+                MultiSutMatcher multiSutMatcher = new MultiSutMatcher(fad, capture, decodeLatency, convertLatency);
+                buckets[i] = new Bucket(capture, multiSutMatcher, multiSutMatcher.getMatchers());
+                if (names == null) {
+                    names = new ArrayList<>();
+                    for (int sut = 0; sut < multiSutMatcher.getMatchers().size(); sut++) {
+                        names.add(MultiSutMatcher.simulationName(multiSutMatcher.getSimulation(sut)));
+                    }
+                }
+            } else {
+                MunitionDetonationMatcher matcher = new MunitionDetonationMatcher(fad, fadKeys, capture,
+                        decodeLatency, convertLatency);
+                buckets[i] = new Bucket(capture, matcher, Collections.singletonList(matcher));
+            }
+        }
+        sutNames = names == null ? Collections.singletonList("") : Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Verify the rolling window of received munition detonations at each interval until
+     * the end of the soak test. The first verdict is given once the window is full, or at
+     * the end of a soak test shorter than the window.
+     *
+     * @param durationMillis duration of the soak test in milliseconds
+     * @param intervalMillis interval between verdicts in milliseconds
+     * @param pollIntervalMillis interval at which the poll action runs, in milliseconds
+     * @param poll brings the newly received PDUs to this sink, run at each poll interval and before each verdict
+     * @param timeSeriesFile receives one JSON object per verdict and SuT
+     * @param logger the logger
+     * @throws IOException if the time series cannot be written
+     * @throws InterruptedException if interrupted while waiting for the end of an interval
+     */
+    public void run(long durationMillis, long intervalMillis, long pollIntervalMillis, Runnable poll,
+            Path timeSeriesFile, Logger logger) throws IOException, InterruptedException {
+        Path parent = timeSeriesFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        long start = System.currentTimeMillis();
+        long end = start + durationMillis;
+        long intervalStart = start;
+        try (Writer writer = Files.newBufferedWriter(timeSeriesFile, StandardCharsets.UTF_8)) {
+            while (intervalStart < end) {
+                long intervalEnd = Math.min(end, intervalStart + intervalMillis);
+                long now;
+                while ((now = System.currentTimeMillis()) < intervalEnd) {
+                    poll.run();
+                    TimeUnit.MILLISECONDS.sleep(Math.min(pollIntervalMillis, intervalEnd - now));
+                }
+                poll.run();
+                nextInterval();
+                if (completedIntervals >= windowIntervals || intervalEnd >= end) {
+                    long windowStart = Math.max(start, intervalEnd - windowIntervals * intervalMillis);
+                    verify(windowStart, intervalEnd, writer, logger);
+                }
+                intervalStart = intervalEnd;
+            }
+        }
+        logger.info("Soak test over: {} of {} windows failed, time series written to {}", failedWindowCount,
+                windowCount, timeSeriesFile);
+    }
+
+    /**
+     * Make the oldest bucket, which leaves the window, the one receiving the next interval.
+     */
+    private void nextInterval() {
+        int next = (active + 1) % buckets.length;
+        // The oldest bucket is not offered any PDU, it can be reset outside the lock
+        buckets[next].sink.reset();
+        synchronized (this) {
+            totalReceivedCount += buckets[active].sink.getReceivedCount();
+            active = next;
+        }
+        completedIntervals++;
+    }
+
+    /**
+     * @param age 0 for the last interval completed, up to the window size - 1
+     */
+    private Bucket completed(int age) {
+        return buckets[(active - 1 - age + 2 * buckets.length) % buckets.length];
+    }
+
+    private void verify(long windowStart, long windowEnd, Writer writer, Logger logger)
+            throws IOException, InterruptedException {
+        long verifyStart = System.nanoTime();
+        int windowBuckets = Math.min(completedIntervals, windowIntervals);
+        boolean passed = true;
+        int missing = 0;
+        for (int sut = 0; sut < sutNames.size(); sut++) {
+            MunitionDetonationMatcher[] matchers = new MunitionDetonationMatcher[windowBuckets];
+            int foreign = 0;
+            long duplicates = 0;
+            for (int age = 0; age < windowBuckets; age++) {
+                matchers[age] = completed(age).matchers.get(sut);
+                // Foreign events are counted per interval, the largest count is a lower bound for the window
+                foreign = Math.max(foreign, matchers[age].getForeignCount());
+                duplicates += matchers[age].getDuplicateCount();
+            }
+            List<MunitionDetonation> sutFad = matchers[0].getFad();
+            List<DetonationCheckResult> results = comparator.compareAll(sutFad, fadIndex -> {
+                // The most recent copy of each FAD entry in the window
+                for (MunitionDetonationMatcher matcher : matchers) {
+                    MunitionDetonation match = matcher.getMatch(fadIndex);
+                    if (match != null) {
+                        return match;
+                    }
+                }
+                return null;
+            }, parallelism);
+            int found = 0;
+            for (DetonationCheckResult result : results) {
+                if (result.isFound()) {
+                    found++;
+                }
+            }
+            VerdictSummary summary = new VerdictSummary(sutFad.size(), found + foreign);
+            results.forEach(summary::add);
+            passed &= summary.isPassed();
+            missing += summary.getMissing();
+            String sutName = sutNames.get(sut);
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("window", windowCount + 1);
+            line.put("start", windowStart);
+            line.put("end", windowEnd);
+            if (!sutName.isEmpty()) {
+                line.put("sut", sutName);
+            }
+            line.put("passed", summary.isPassed());
+            line.put("fadSize", summary.getFadSize());
+            line.put("received", summary.getReceivedCount());
+            line.put("failed", summary.getFailed());
+            line.put("missing", summary.getMissing());
+            line.put("parametersFailed", summary.getParametersFailed());
+            line.put("spatialFailed", summary.getSpatialFailed());
+            line.put("velocityMismatch", summary.getVelocityMismatch());
+            line.put("foreign", foreign);
+            line.put("duplicates", duplicates);
+            line.put("spilledBytes", getWindowSpilledBytes(windowBuckets));
+            // json-simple escapes the SuT name
+            JSONValue.writeJSONString(line, writer);
+            writer.write('\n');
+            if (!summary.isPassed()) {
+                logger.warn("Soak window {}{} failed: {}", windowCount + 1, sutName.isEmpty() ? "" : ", SuT " + sutName,
+                        summary);
+            }
+        }
+        writer.flush();
+
+        lastWindowMissing = missing;
+        if (!passed) {
+            failedWindowCount++;
+        }
+        windowCount++;
+        verifyLatency.recordSince(verifyStart);
+        logger.info("Soak window {} {}: {} FAD munition detonations missing", windowCount, passed ? "passed" : "failed",
+                missing);
+    }
+
+    private long getWindowSpilledBytes(int windowBuckets) {
+        long spilledBytes = 0;
+        for (int age = 0; age < windowBuckets; age++) {
+            spilledBytes += completed(age).capture.getSpilledBytes();
+        }
+        return spilledBytes;
+    }
+
+    @Override
+    public synchronized boolean admit(long eventKey) {
+        return buckets[active].sink.admit(eventKey);
+    }
+
+    @Override
+    public synchronized boolean offer(long eventKey, ByteBuffer encodedPdu) {
+        return buckets[active].sink.offer(eventKey, encodedPdu);
+    }
+
+    @Override
+    public synchronized boolean offer(DetonationPdu pdu) {
+        return buckets[active].sink.offer(pdu);
+    }
+
+    /**
+     * @return the number of distinct event identifiers received in the current interval
+     */
+    @Override
+    public int getReceivedCount() {
+        return buckets[active].sink.getReceivedCount();
+    }
+
+    /**
+     * @return the number of distinct event identifiers not in the FAD received in the current interval
+     */
+    @Override
+    public int getForeignCount() {
+        return buckets[active].sink.getForeignCount();
+    }
+
+    /**
+     * @return the number of repeated event identifiers dropped in the current interval
+     */
+    @Override
+    public long getDuplicateCount() {
+        return buckets[active].sink.getDuplicateCount();
+    }
+
+    /**
+     * @return the number of distinct FAD event identifiers received in the current interval
+     */
+    @Override
+    public int getMatchedCount() {
+        return buckets[active].sink.getMatchedCount();
+    }
+
+    /**
+     * @return true when every FAD event identifier has been received in the current interval
+     */
+    @Override
+    public boolean isComplete() {
+        return buckets[active].sink.isComplete();
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (Bucket bucket : buckets) {
+            bucket.sink.reset();
+        }
+    }
+
+    /**
+     * @return the number of distinct event identifiers received in every completed interval
+     */
+    public long getTotalReceivedCount() {
+        return totalReceivedCount;
+    }
+
+    /**
+     * @return the number of windows verified
+     */
+    public long getWindowCount() {
+        return windowCount;
+    }
+
+    /**
+     * @return the number of windows that failed
+     */
+    public long getFailedWindowCount() {
+        return failedWindowCount;
+    }
+
+    /**
+     * @return the number of FAD munition detonations missing from the last window, -1 before the first verdict
+     */
+    public int getLastWindowMissing() {
+        return lastWindowMissing;
+    }
+
+    /**
+     * @return the number of bytes of received PDUs spilled to disk by every bucket
+     */
+    public long getSpilledBytes() {
+        long spilledBytes = 0;
+        for (Bucket bucket : buckets) {
+            spilledBytes += bucket.capture.getSpilledBytes();
+        }
+        return spilledBytes;
+    }
+
+    /**
+     * @return the time taken to decode the received PDUs for the verdicts
+     */
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    /**
+     * @return the time taken to convert the received PDUs to RPR for the verdicts
+     */
+    public LatencyHistogram getConvertLatency() {
+        return convertLatency;
+    }
+
+    /**
+     * @return the time taken to verify each window
+     */
+    public LatencyHistogram getVerifyLatency() {
+        return verifyLatency;
+    }
+
+    /**
+     * @return the name of each SuT, a single empty name without multiSut
+     */
+    public List<String> getSutNames() {
+        return sutNames;
+    }
+
+    /**
+     * Delete the spill files.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Bucket bucket : buckets) {
+            try {
+                bucket.capture.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
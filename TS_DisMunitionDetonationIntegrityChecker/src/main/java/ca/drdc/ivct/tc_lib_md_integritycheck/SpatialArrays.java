@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.fom.base.structs.RelativePositionStruct;
+import ca.drdc.ivct.fom.base.structs.VelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.WorldLocationStruct;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+
+/**
+ * The spatial information of a block of munition detonations, one primitive array per
+ * component.
+ * <p>
+ * The structs of each munition detonation are read once, when it is set; the
+ * deviations of a whole block are then computed by plain loops over the arrays,
+ * without any object access or allocation. The components of a missing struct, or of
+ * a missing munition detonation, are NaN.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class SpatialArrays {
+
+    /** Index of the x component of the detonation location, followed by y and z */
+    public static final int LOCATION = 0;
+    /** Index of the x component of the final velocity vector, followed by y and z */
+    public static final int VELOCITY = 3;
+    /** Index of the x body distance of the relative detonation location, followed by y and z */
+    public static final int RELATIVE_POSITION = 6;
+    /** Number of components */
+    public static final int COMPONENTS = 9;
+
+    private final double[][] components;
+    private final int capacity;
+
+    /**
+     * @param capacity the number of munition detonations held
+     */
+    public SpatialArrays(int capacity) {
+        this.capacity = capacity;
+        this.components = new double[COMPONENTS][capacity];
+    }
+
+    /**
+     * @param index the index in the block
+     * @param munitionDetonation the munition detonation, or null
+     */
+    public void set(int index, MunitionDetonation munitionDetonation) {
+        WorldLocationStruct location = munitionDetonation == null ? null : munitionDetonation.getDetonationLocation();
+        if (location == null) {
+            setMissing(LOCATION, index);
+        } else {
+            components[LOCATION][index] = location.getX();
+            components[LOCATION + 1][index] = location.getY();
+            components[LOCATION + 2][index] = location.getZ();
+        }
+        VelocityVectorStruct velocity = munitionDetonation == null ? null : munitionDetonation.getFinalVelocityVector();
+        if (velocity == null) {
+            setMissing(VELOCITY, index);
+        } else {
+            components[VELOCITY][index] = velocity.getXVelocity();
+            components[VELOCITY + 1][index] = velocity.getYVelocity();
+            components[VELOCITY + 2][index] = velocity.getZVelocity();
+        }
+        RelativePositionStruct relativePosition = munitionDetonation == null ? null
+                : munitionDetonation.getRelativeDetonationLocation();
+        if (relativePosition == null) {
+            setMissing(RELATIVE_POSITION, index);
+        } else {
+            components[RELATIVE_POSITION][index] = relativePosition.getBodyXDistance();
+            components[RELATIVE_POSITION + 1][index] = relativePosition.getBodyYDistance();
+            components[RELATIVE_POSITION + 2][index] = relativePosition.getBodyZDistance();
+        }
+    }
+
+    private void setMissing(int firstComponent, int index) {
+        components[firstComponent][index] = Double.NaN;
+        components[firstComponent + 1][index] = Double.NaN;
+        components[firstComponent + 2][index] = Double.NaN;
+    }
+
+    /**
+     * @param component a component index, from {@link #LOCATION} to {@link #COMPONENTS} excluded
+     * @return the values of the component, indexed like the block
+     */
+    public double[] getComponent(int component) {
+        return components[component];
+    }
+
+    /**
+     * @return the number of munition detonations held
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Compute the deviation of each struct of a block, as defined by {@link SpatialDeviation}:
+     * the largest absolute difference between its components, NaN if either struct is missing.
+     *
+     * @param actual the received munition detonations, indexed like this block
+     * @param count the number of munition detonations to compare, from index 0
+     * @param deviations receives the deviation of the struct starting at each component
+     *                   index, e.g. {@code deviations[VELOCITY][i]}; the other rows are unused
+     */
+    public void deviations(SpatialArrays actual, int count, double[][] deviations) {
+        deviations(actual, count, LOCATION, deviations[LOCATION]);
+        deviations(actual, count, VELOCITY, deviations[VELOCITY]);
+        deviations(actual, count, RELATIVE_POSITION, deviations[RELATIVE_POSITION]);
+    }
+
+    private void deviations(SpatialArrays actual, int count, int firstComponent, double[] deviations) {
+        double[] expectedX = components[firstComponent];
+        double[] expectedY = components[firstComponent + 1];
+        double[] expectedZ = components[firstComponent + 2];
+        double[] actualX = actual.components[firstComponent];
+        double[] actualY = actual.components[firstComponent + 1];
+        double[] actualZ = actual.components[firstComponent + 2];
+        for (int i = 0; i < count; i++) {
+            // Math.max and Math.abs propagate NaN, like SpatialDeviation.of
+            deviations[i] = Math.max(Math.abs(expectedX[i] - actualX[i]),
+                    Math.max(Math.abs(expectedY[i] - actualY[i]), Math.abs(expectedZ[i] - actualZ[i])));
+        }
+    }
+}
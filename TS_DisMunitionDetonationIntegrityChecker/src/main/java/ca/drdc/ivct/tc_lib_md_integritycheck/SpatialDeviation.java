@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.fom.base.structs.RelativePositionStruct;
+import ca.drdc.ivct.fom.base.structs.VelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.WorldLocationStruct;
+
+/**
+ * Numeric deviation between the spatial information of a FAD entry and its received match.
+ * <p>
+ * The deviation of a struct is the largest absolute difference between its components.
+ * It is reported next to the threshold of the check; the pass/fail decision itself stays
+ * with {@link ca.drdc.ivct.fom.utils.MunitionDetonationEqualUtils}.
+ */
+public final class SpatialDeviation {
+
+    /**
+     * Threshold key of the detonation location and relative detonation location checks.
+     */
+    public static final String WORLD_LOCATION_THRESHOLD = "worldLocation";
+
+    /**
+     * Threshold key of the final velocity check.
+     */
+    public static final String VELOCITY_THRESHOLD = "velocity";
+
+    private SpatialDeviation() {
+    }
+
+    /**
+     * @return the largest absolute difference between the coordinates, NaN if a location is missing
+     */
+    public static double of(WorldLocationStruct expected, WorldLocationStruct actual) {
+        if (expected == null || actual == null) {
+            return Double.NaN;
+        }
+        return max(expected.getX() - actual.getX(), expected.getY() - actual.getY(), expected.getZ() - actual.getZ());
+    }
+
+    /**
+     * @return the largest absolute difference between the velocity components, NaN if a vector is missing
+     */
+    public static double of(VelocityVectorStruct expected, VelocityVectorStruct actual) {
+        if (expected == null || actual == null) {
+            return Double.NaN;
+        }
+        return max(expected.getXVelocity() - actual.getXVelocity(), expected.getYVelocity() - actual.getYVelocity(),
+                expected.getZVelocity() - actual.getZVelocity());
+    }
+
+    /**
+     * @return the largest absolute difference between the body distances, NaN if a position is missing
+     */
+    public static double of(RelativePositionStruct expected, RelativePositionStruct actual) {
+        if (expected == null || actual == null) {
+            return Double.NaN;
+        }
+        return max(expected.getBodyXDistance() - actual.getBodyXDistance(),
+                expected.getBodyYDistance() - actual.getBodyYDistance(),
+                expected.getBodyZDistance() - actual.getBodyZDistance());
+    }
+
+    private static double max(double dx, double dy, double dz) {
+        return Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz)));
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONValue;
+
+/**
+ * Writes one JSON object per FAD entry (JSON Lines) as the check results are produced.
+ * <p>
+ * Each line holds the event identifier, whether the entry passed, the checks that
+ * failed and, for the spatial checks, the deviation next to the threshold. Missing
+ * values are written as null.
+ */
+public class VerdictReportWriter implements Closeable {
+
+    private final Writer writer;
+    private final double locationThreshold;
+    private final double velocityThreshold;
+
+    /**
+     * @param reportFile the file to create or overwrite
+     * @param spatialThreshold the thresholds of the spatial checks, keyed by field name
+     * @throws IOException if the file cannot be created
+     */
+    public VerdictReportWriter(Path reportFile, Map<String, Double> spatialThreshold) throws IOException {
+        Path parent = reportFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8);
+        this.locationThreshold = threshold(spatialThreshold, SpatialDeviation.WORLD_LOCATION_THRESHOLD);
+        this.velocityThreshold = threshold(spatialThreshold, SpatialDeviation.VELOCITY_THRESHOLD);
+    }
+
+    private static double threshold(Map<String, Double> spatialThreshold, String key) {
+        Double value = spatialThreshold == null ? null : spatialThreshold.get(key);
+        return value == null ? Double.NaN : value;
+    }
+
+    /**
+     * @param result the result of one FAD entry
+     * @throws IOException if the line cannot be written
+     */
+    public void write(DetonationCheckResult result) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("eventIdentifier", String.valueOf(result.getEventIdentifier()));
+        line.put("passed", result.isPassed());
+
+        List<String> failedChecks = new ArrayList<>(3);
+        if (!result.isFound()) {
+            failedChecks.add("identity");
+        } else {
+            if (!result.isParametersMatch()) {
+                failedChecks.add("parameters");
+            }
+            if (!result.isLocationMatch()) {
+                failedChecks.add("location");
+            }
+            if (!result.isRelativePositionMatch()) {
+                failedChecks.add("relativePosition");
+            }
+        }
+        line.put("failedChecks", failedChecks);
+        line.put("velocityMatch", result.isFound() ? result.isVelocityMatch() : null);
+
+        line.put("location", deviation(result.getLocationDeviation(), locationThreshold));
+        line.put("velocity", deviation(result.getVelocityDeviation(), velocityThreshold));
+        line.put("relativePosition", deviation(result.getRelativePositionDeviation(), locationThreshold));
+        // json-simple escapes the strings and writes NaN and infinite numbers as null
+        JSONValue.writeJSONString(line, writer);
+        writer.write('\n');
+    }
+
+    private static Map<String, Object> deviation(double deviation, double threshold) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("deviation", deviation);
+        values.put("threshold", threshold);
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+/**
+ * Counts of the check results of a test run.
+ */
+public class VerdictSummary {
+
+    private final int fadSize;
+    private final int receivedCount;
+    private int passed;
+    private int missing;
+    private int parametersFailed;
+    private int spatialFailed;
+    private int velocityMismatch;
+
+    /**
+     * @param fadSize number of munition detonations in the FAD
+     * @param receivedCount number of distinct munition detonations received
+     */
+    public VerdictSummary(int fadSize, int receivedCount) {
+        this.fadSize = fadSize;
+        this.receivedCount = receivedCount;
+    }
+
+    /**
+     * @param result the result of one FAD entry
+     */
+    public void add(DetonationCheckResult result) {
+        if (!result.isFound()) {
+            missing++;
+            return;
+        }
+        if (!result.isParametersMatch()) {
+            parametersFailed++;
+        }
+        if (!result.isSpatialMatch()) {
+            spatialFailed++;
+        }
+        if (!result.isVelocityMatch()) {
+            velocityMismatch++;
+        }
+        if (result.isPassed()) {
+            passed++;
+        }
+    }
+
+    /**
+     * @return true if every FAD entry passed and nothing else was received
+     */
+    public boolean isPassed() {
+        return passed == fadSize && receivedCount == fadSize;
+    }
+
+    public int getFadSize() {
+        return fadSize;
+    }
+
+    public int getReceivedCount() {
+        return receivedCount;
+    }
+
+    public int getPassed() {
+        return passed;
+    }
+
+    public int getFailed() {
+        return fadSize - passed;
+    }
+
+    public int getMissing() {
+        return missing;
+    }
+
+    public int getParametersFailed() {
+        return parametersFailed;
+    }
+
+    public int getSpatialFailed() {
+        return spatialFailed;
+    }
+
+    public int getVelocityMismatch() {
+        return velocityMismatch;
+    }
+
+    @Override
+    public String toString() {
+        return "FAD entries: " + fadSize + ", distinct received: " + receivedCount + ", passed: " + passed
+                + ", missing: " + missing + ", wrong parameters: " + parametersFailed
+                + ", wrong spatial info: " + spatialFailed + ", velocity mismatches: " + velocityMismatch;
+    }
+}
@@ -16,24 +16,80 @@
  *******************************************************************************/
 package ca.drdc.ivct.tc_md_integritycheck;
 
-import ca.drdc.ivct.fom.base.structs.EventIdentifierStruct;
-import ca.drdc.ivct.fom.utils.MunitionDetonationCSVReader;
-import ca.drdc.ivct.fom.utils.MunitionDetonationEqualUtils;
+import ca.drdc.ivct.dis.common.DatagramRecordReader;
+import ca.drdc.ivct.dis.common.DatagramRecordWriter;
+import ca.drdc.ivct.dis.common.FadCache;
+import ca.drdc.ivct.dis.common.FadLoader;
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import ca.drdc.ivct.dis.common.metrics.MetricsRegistry;
 import ca.drdc.ivct.fom.warfare.MunitionDetonation;
-import ca.drdc.ivct.tc_lib_md_integritycheck.CountdownTimer;
+import ca.drdc.ivct.tc_lib_md_integritycheck.ArrivalAnalyzer;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationCapture;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationCheckResult;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationDatagramFilter;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationDatagramReceiver;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationPduCollector;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DetonationSink;
+import ca.drdc.ivct.tc_lib_md_integritycheck.DeviationStatistics;
+import ca.drdc.ivct.tc_lib_md_integritycheck.IntegrityCheckConfig;
+import ca.drdc.ivct.tc_lib_md_integritycheck.ListeningWindow;
+import ca.drdc.ivct.tc_lib_md_integritycheck.MunitionDetonationComparator;
+import ca.drdc.ivct.tc_lib_md_integritycheck.MunitionDetonationMatcher;
+import ca.drdc.ivct.tc_lib_md_integritycheck.MultiSutMatcher;
+import ca.drdc.ivct.tc_lib_md_integritycheck.SoakMonitor;
+import ca.drdc.ivct.tc_lib_md_integritycheck.VerdictReportWriter;
+import ca.drdc.ivct.tc_lib_md_integritycheck.VerdictSummary;
 import de.fraunhofer.iosb.tc_lib.TcFailed;
 import de.fraunhofer.iosb.tc_lib.TcInconclusive;
-
-import de.fraunhofer.iosb.tc_lib.converter.DisModelConverter;
 import de.fraunhofer.iosb.tc_lib.dis.DISAbstractTestCase;
 import org.slf4j.Logger;
 
+import javax.management.JMException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 public class DisMunitionDetonationIntegrityTC_0001 extends DISAbstractTestCase {
 
+    private static final String LINE_SEPARATOR = "\n---------------------------------------------------------------------\n";
+
     private List<MunitionDetonation> fad ;
     private Map<String, Double> spatialThresold;
+    private IntegrityCheckConfig config;
+    private DetonationCapture capture;
+    private DetonationSink sink;
+    private List<MunitionDetonationMatcher> suts;
+    private List<String> sutNames;
+    private DetonationPduCollector collector;
+    private DetonationDatagramFilter filter;
+    private DetonationDatagramReceiver receiver;
+    private ArrivalAnalyzer arrivals;
+    private MetricsRegistry metrics;
+    private SoakMonitor soak;
+    private volatile int verdictFailed = -1;
+
+    /**
+     * Verdict of one system under test.
+     */
+    private static class SutVerdict {
+        final String name;
+        final VerdictSummary summary;
+        final Path reportFile;
+
+        SutVerdict(String name, VerdictSummary summary, Path reportFile) {
+            this.name = name;
+            this.summary = summary;
+            this.reportFile = reportFile;
+        }
+    }
 
 
 
@@ -58,17 +114,234 @@ public class DisMunitionDetonationIntegrityTC_0001 extends DISAbstractTestCase {
 
     @Override
     protected void preambleAction(Logger logger) throws TcInconclusive {
-        // Load all files in test cases folder. This constitutes the federation agreement document (FAD)
+        config = new IntegrityCheckConfig(IntegrityCheckConfig.DEFAULT_CONFIG_FILE);
 
-        this.fad = MunitionDetonationCSVReader.loadCSVFileToMunitionDetonationList(super.param.getFadUrls());
+        // Load all files in test cases folder. This constitutes the federation agreement document (FAD)
+        this.fad = loadFad(logger);
         if (fad.isEmpty()) {
             throw new TcInconclusive("The FAD is empty.");
         }
 
         spatialThresold = this.param.getSpatialValueThreshold();
+        if (config.getSoakInterval() > 0 && config.getReplayFile() != null) {
+            logger.warn("Soak mode is not available when replaying a recording, giving a single verdict.");
+        }
+        if (config.getSoakInterval() > 0 && config.getReplayFile() == null) {
+            // The windows are received and verified in performTest
+            // The window is made of whole intervals, rounded up
+            int windowIntervals = (int) ((config.getSoakWindow() + config.getSoakInterval() - 1) / config.getSoakInterval());
+            soak = new SoakMonitor(fad, config.isMultiSut(), windowIntervals, config.getCaptureMemoryLimit(),
+                    config.getCaptureSpillDirectory(),
+                    new MunitionDetonationComparator(spatialThresold, config.isPrimitiveSpatialCheck()),
+                    config.getVerdictParallelism());
+            sink = soak;
+            if (config.isMultiSut()) {
+                logger.info("Soak testing {} SuTs: {}", soak.getSutNames().size(), soak.getSutNames());
+            }
+        } else if (config.isMultiSut()) {
+            capture = new DetonationCapture(config.getCaptureMemoryLimit(), config.getCaptureSpillDirectory());
+            // One verdict per site/application found in the FAD event identifiers
+            MultiSutMatcher multiSutMatcher = new MultiSutMatcher(fad, capture);
+            sink = multiSutMatcher;
+            suts = multiSutMatcher.getMatchers();
+            sutNames = new ArrayList<>();
+            for (int i = 0; i < suts.size(); i++) {
+                sutNames.add(MultiSutMatcher.simulationName(multiSutMatcher.getSimulation(i)));
+            }
+            logger.info("Verifying {} SuTs: {}", suts.size(), sutNames);
+        } else {
+            capture = new DetonationCapture(config.getCaptureMemoryLimit(), config.getCaptureSpillDirectory());
+            MunitionDetonationMatcher matcher = new MunitionDetonationMatcher(fad, capture);
+            sink = matcher;
+            suts = Collections.singletonList(matcher);
+            sutNames = Collections.singletonList("");
+        }
+        if (config.isArrivalAnalysis()) {
+            if (config.getReplayFile() != null || config.isRawReceiver()) {
+                arrivals = new ArrivalAnalyzer(fad);
+            } else {
+                logger.warn("The IVCT DIS plugin does not give the arrival of each PDU, set rawReceiver=true to analyse it.");
+            }
+        }
+        if (config.getReplayFile() != null) {
+            // Verify a recording instead of listening to the network
+            filter = new DetonationDatagramFilter(sink, config.getExerciseId(), arrivals);
+            if (config.isMetrics()) {
+                startMetrics(logger);
+            }
+            replay(config.getReplayFile(), logger);
+            return;
+        }
+
+        LongSupplier receivedCount;
+        if (config.isRawReceiver()) {
+            // The receiver filters and offers the datagrams on its own thread
+            filter = new DetonationDatagramFilter(sink, config.getExerciseId(), arrivals);
+            DatagramRecordWriter recorder = null;
+            try {
+                if (config.getRecordFile() != null) {
+                    recorder = new DatagramRecordWriter(config.getRecordFile());
+                    logger.info("Recording the received DetonationPdus to {}", config.getRecordFile());
+                }
+                receiver = new DetonationDatagramReceiver(config.getReceivePort(), config.getReceiveBufferSize(),
+                        filter, recorder);
+            } catch (IOException e) {
+                closeQuietly(recorder);
+                throw new TcInconclusive("Could not listen for DIS datagrams on port " + config.getReceivePort(), e);
+            }
+            // Like the plugin path, only the DetonationPdus of the exercise keep the listening window open
+            receivedCount = filter::getExerciseDetonationCount;
+        } else {
+            if (config.getRecordFile() != null) {
+                logger.warn("The IVCT DIS plugin does not give access to the raw datagrams, set rawReceiver=true to record them.");
+            }
+            if (soak != null) {
+                logger.warn("The IVCT DIS plugin keeps every received PDU, set rawReceiver=true to soak test in constant memory.");
+            }
+            // The PDUs are evaluated as they arrive, so that the sink knows when every FAD entry is found
+            collector = new DetonationPduCollector(super.disManager::getReceivedDetonationPdus, sink);
+            receivedCount = () -> {
+                collector.drain();
+                return collector.getProcessedCount();
+            };
+        }
+        if (config.isMetrics()) {
+            startMetrics(logger);
+        }
+        if (soak != null) {
+            return;
+        }
+
+        long maximumWaitingPeriod = config.getMaximumWaitingPeriod() > 0
+                ? config.getMaximumWaitingPeriod() : this.param.getWaitingPeriod();
+        ListeningWindow listeningWindow = new ListeningWindow(maximumWaitingPeriod * 1000L,
+                config.getIdleTimeout() * 1000L, config.getPollInterval(), logger);
+        long start = System.currentTimeMillis();
+        ListeningWindow.Outcome outcome;
+        try {
+            // Stop once every FAD entry is found
+            outcome = listeningWindow.await(receivedCount, sink::isComplete);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TcInconclusive("Interrupted while listening for munition detonations", e);
+        }
+
+        switch (outcome) {
+        case COMPLETE:
+            logger.info("All {} FAD munition detonations received after {} ms, ending the listening period.",
+                    sink.getMatchedCount(), System.currentTimeMillis() - start);
+            break;
+        case IDLE_TIMEOUT:
+            logger.info("No munition detonation received for {} seconds, ending the listening period.", config.getIdleTimeout());
+            break;
+        default:
+            logger.info("Listening period of {} seconds is over.", maximumWaitingPeriod);
+            break;
+        }
+    }
+
+    /**
+     * Feed a recording of DIS datagrams through the same filter as the raw receiver.
+     */
+    private void replay(Path replayFile, Logger logger) throws TcInconclusive {
+        long start = System.currentTimeMillis();
+        try (DatagramRecordReader reader = new DatagramRecordReader(replayFile)) {
+            logger.info("Replaying {}, recorded on {}, at {}", replayFile, new Date(reader.getStartEpochMillis()),
+                    config.getReplaySpeed() > 0 ? config.getReplaySpeed() + " times real time" : "full speed");
+            // The arrivals are analysed at their recorded time, whatever the replay speed
+            reader.replay(config.getReplaySpeed(),
+                    datagram -> filter.accept(datagram, TimeUnit.MICROSECONDS.toNanos(reader.getTimestampMicros())));
+        } catch (IOException e) {
+            throw new TcInconclusive("Could not replay " + replayFile, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TcInconclusive("Interrupted while replaying " + replayFile, e);
+        }
+        logger.info("Replayed {} in {} ms.", filter, System.currentTimeMillis() - start);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Already failing
+            }
+        }
+    }
+
+    /**
+     * Publish the counters of the receiving and verdict stages for the duration of the test.
+     */
+    private void startMetrics(Logger logger) {
+        metrics = new MetricsRegistry("md_checker");
+        if (filter != null) {
+            metrics.counter("pdus_received", "Datagrams received on the DIS port or replayed", filter::getDatagramCount);
+        } else {
+            metrics.counter("pdus_received", "DetonationPdus received from the IVCT DIS plugin",
+                    () -> collector.getProcessedCount() + collector.getBacklog());
+            metrics.gauge("receive_queue_depth", "DetonationPdus received but not yet evaluated", collector::getBacklog);
+        }
+        metrics.counter("duplicates_dropped", "Repeated munition detonation events dropped", sink::getDuplicateCount);
+        metrics.gauge("fad_size", "Munition detonations in the FAD", () -> fad.size());
+        metrics.gauge("fad_matched", "FAD munition detonations received", sink::getMatchedCount);
+        metrics.gauge("fad_unmatched", "FAD munition detonations not received yet", () -> fad.size() - sink.getMatchedCount());
+        metrics.gauge("foreign_events", "Munition detonation events received that are not in the FAD", sink::getForeignCount);
+        metrics.gauge("fad_failed", "FAD munition detonations that failed the verdict, NaN until the verdict",
+                () -> verdictFailed < 0 ? Double.NaN : verdictFailed);
+        LatencyHistogram decodeLatency;
+        LatencyHistogram convertLatency;
+        if (soak != null) {
+            metrics.gauge("capture_spilled_bytes", "Bytes of received PDUs of the soak window spilled to disk",
+                    soak::getSpilledBytes);
+            metrics.counter("soak_windows", "Soak windows verified", soak::getWindowCount);
+            metrics.counter("soak_failed_windows", "Soak windows that failed the verdict", soak::getFailedWindowCount);
+            metrics.gauge("soak_last_window_missing", "FAD munition detonations missing from the last soak window, NaN until the first verdict",
+                    () -> soak.getLastWindowMissing() < 0 ? Double.NaN : soak.getLastWindowMissing());
+            metrics.histogram("soak_verify", "Time to verify a soak window", soak.getVerifyLatency());
+            decodeLatency = soak.getDecodeLatency();
+            convertLatency = soak.getConvertLatency();
+        } else {
+            metrics.gauge("capture_spilled_bytes", "Bytes of received PDUs spilled to disk", capture::getSpilledBytes);
+            decodeLatency = sink instanceof MultiSutMatcher
+                    ? ((MultiSutMatcher) sink).getDecodeLatency() : suts.get(0).getDecodeLatency();
+            convertLatency = sink instanceof MultiSutMatcher
+                    ? ((MultiSutMatcher) sink).getConvertLatency() : suts.get(0).getConvertLatency();
+        }
+        if (arrivals != null) {
+            metrics.counter("arrival_reordered", "FAD munition detonations received after one sent later", arrivals::getReorderedCount);
+            metrics.gauge("arrival_jitter_ms", "Interarrival jitter of the SuT links in milliseconds", arrivals::getJitterMillis);
+            metrics.gauge("arrival_loss_rate", "Fraction of the SuT sends lost, NaN until the verdict", arrivals::getLossRate);
+        }
+        metrics.histogram("decode", "Time to decode a received DetonationPdu for the verdict", decodeLatency);
+        metrics.histogram("convert", "Time to convert a received DetonationPdu to RPR for the verdict", convertLatency);
+        try {
+            metrics.publishJmx("ca.drdc.ivct:type=MunitionDetonationIntegrityChecker");
+            if (config.getMetricsPort() > 0) {
+                metrics.startHttp(config.getMetricsPort());
+            }
+        } catch (JMException | IOException e) {
+            logger.warn("Could not publish the metrics", e);
+        }
+    }
 
-        // Let five second to IVCT federation client to discover the munition detonations.
-        new CountdownTimer(this.param.getWaitingPeriod(), logger).run();
+    /**
+     * Load the FAD from its compiled form when enabled, falling back to the CSV files.
+     */
+    private List<MunitionDetonation> loadFad(Logger logger) throws TcInconclusive {
+        if (config.isFadCache()) {
+            try {
+                return new FadCache(config.getFadCacheDirectory(), config.getFadLoadParallelism())
+                        .loadMunitionDetonations(super.param.getFadUrls());
+            } catch (IOException e) {
+                logger.warn("Could not use the compiled FAD, parsing the CSV files instead", e);
+            }
+        }
+        try {
+            return new FadLoader(config.getFadLoadParallelism()).load(super.param.getFadUrls());
+        } catch (IOException e) {
+            throw new TcInconclusive("Could not load the FAD", e);
+        }
     }
 
     /**
@@ -84,103 +357,280 @@ public class DisMunitionDetonationIntegrityTC_0001 extends DISAbstractTestCase {
         logger.info("Make sure that the Munition Detonation Agent federate has joined the federation!");
 
 
-        Map<EventIdentifierStruct, MunitionDetonation> munitionDetonationMap = new HashMap<>();
-        super.disManager.getReceivedDetonationPdus().stream()
-                .map(DisModelConverter::disMunitionDetonationToRpr)
-                .forEachOrdered(munitionDetonation -> munitionDetonationMap.computeIfAbsent(munitionDetonation.getEventIdentifier(), (key)->munitionDetonation));
+        try {
+            if (soak != null) {
+                runSoak(logger);
+            } else {
+                verifyMunitionDetonations(logger);
+            }
+        } finally {
+            if (receiver != null) {
+                closeReceiver(logger);
+            }
+            try {
+                if (soak != null) {
+                    soak.close();
+                } else {
+                    capture.close();
+                }
+            } catch (IOException e) {
+                logger.warn("Could not delete the capture spill file", e);
+            }
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+    }
 
-        logger.info("Executing Test");
-        String lineSeparator = "\n---------------------------------------------------------------------\n";
+    private void closeReceiver(Logger logger) {
+        try {
+            receiver.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the DIS datagram receiver", e);
+        }
+    }
 
+    /**
+     * Stop receiving before a verdict, which is only meaningful if nothing was missed.
+     *
+     * @throws TcInconclusive if the receiver stopped early on an error
+     */
+    private void stopReceiver(Logger logger) throws TcInconclusive {
+        closeReceiver(logger);
+        if (receiver.getFailure() != null) {
+            throw new TcInconclusive("Stopped receiving DIS datagrams during the listening period, "
+                    + "the received munition detonations are incomplete", receiver.getFailure());
+        }
+    }
 
-        if (munitionDetonationMap.isEmpty()) {
+    /**
+     * Verify the munition detonations received in each soak window until the end of the listening period.
+     */
+    private void runSoak(Logger logger) throws TcInconclusive, TcFailed {
+        long duration = config.getMaximumWaitingPeriod() > 0
+                ? config.getMaximumWaitingPeriod() : this.param.getWaitingPeriod();
+        String reportName = newReportName();
+        Path timeSeriesFile = config.getReportDirectory().resolve(reportName + "_soak.jsonl");
+        logger.info("Soak test of {} seconds, one verdict of the last {} seconds every {} seconds.", duration,
+                config.getSoakWindow(), config.getSoakInterval());
+        Runnable poll = collector != null ? collector::drain : () -> { };
+        try {
+            soak.run(duration * 1000L, config.getSoakInterval() * 1000L, config.getPollInterval(), poll,
+                    timeSeriesFile, logger);
+            // The arrivals can only be analysed once the receiver has stopped
+            if (receiver != null) {
+                stopReceiver(logger);
+            }
+        } catch (IOException e) {
+            throw new TcInconclusive("Could not write the soak time series " + timeSeriesFile, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TcInconclusive("Interrupted while soak testing", e);
+        }
+        if (arrivals != null) {
+            writeArrivalAnalysis(reportName, logger);
+        }
+
+        if (soak.getTotalReceivedCount() == 0) {
             throw new TcInconclusive("No MunitionDetonation interactions found on the RTI bus. A system "
                     + "under test must create discoverable MunitionDetonation interactions before attempting the test.");
         }
+        if (soak.getFailedWindowCount() > 0) {
+            throw new TcFailed(soak.getFailedWindowCount() + " of " + soak.getWindowCount()
+                    + " soak windows failed. Details in " + timeSeriesFile);
+        }
+        logger.info("{} TEST IS COMPLETED SUCCESFULLY. {}", LINE_SEPARATOR, LINE_SEPARATOR);
+    }
 
-        boolean testPassed = true;
-        StringBuilder failedStringBuilder = new StringBuilder();
-        StringBuilder debugStringBuilder = new StringBuilder();
+    /**
+     * @return the base name of the report files of a run, down to the millisecond so that runs started in
+     *         the same second do not overwrite each other
+     */
+    private static String newReportName() {
+        return "MunitionDetonationIntegrity_" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+    }
 
-        if (fad.size() != munitionDetonationMap.size()) {
-            testPassed = false;
-            String failedMessage = "FAIL: Fad and discovered munitionDetonation sizes do not match "+fad.size()+" | "+ munitionDetonationMap.size();
-            failedStringBuilder.append(failedMessage);
-            logger.info(failedMessage);
-        } else {
-            debugStringBuilder.append("Received the good amount of munitionDetonation according to the fad");
+    private void verifyMunitionDetonations(Logger logger) throws TcInconclusive, TcFailed {
+        // Evaluate the munition detonations received since the end of the preamble
+        if (receiver != null) {
+            stopReceiver(logger);
+        } else if (collector != null) {
+            collector.drain();
+        }
+        if (sink.getDuplicateCount() > 0 || sink.getForeignCount() > 0 || capture.getSpilledBytes() > 0) {
+            logger.info("{} repeated munition detonations ignored, {} events not in the FAD, {} bytes of received PDUs spilled to disk.",
+                    sink.getDuplicateCount(), sink.getForeignCount(), capture.getSpilledBytes());
         }
 
-        for (MunitionDetonation fadMunitionDetonation : fad) {
-            // Loop over each discovered weapon fire to check if this fadWeaponFire is present
-
-            Optional<MunitionDetonation> optionalMunitionDetonation =
-                    munitionDetonationMap.values()
-                            .stream()
-                            .filter(receivedMunitionDetonation -> receivedMunitionDetonation.getEventIdentifier().equals(fadMunitionDetonation.getEventIdentifier()))
-                            .findFirst();
+        logger.info("Executing Test");
 
-            String failedMessage;
 
-            // testMunitionDetonationIntegrityIdentity
-            if (!optionalMunitionDetonation.isPresent()) {
-                testPassed = false;
-                failedMessage = "FAIL: Munition Detonation Interaction from FAD with identifier " + fadMunitionDetonation.getEventIdentifier()
-                        + " found no MunitionDetonation match in discovered MunitionDetonation Interactions";
-                failedStringBuilder.append("\n"+failedMessage);
-            } else {
-                debugStringBuilder.append("OKAY: Munition Detonation Interaction from FAD with identifier " + fadMunitionDetonation.getEventIdentifier()
-                        + "was found in discovered Munition Detonation Interactions");
+        if (sink.getReceivedCount() == 0) {
+            throw new TcInconclusive("No MunitionDetonation interactions found on the RTI bus. A system "
+                    + "under test must create discoverable MunitionDetonation interactions before attempting the test.");
+        }
 
+        String reportName = newReportName();
+        if (arrivals != null) {
+            writeArrivalAnalysis(reportName, logger);
+        }
+        List<SutVerdict> verdicts;
+        if (suts.size() == 1) {
+            verdicts = Collections.singletonList(verifySut(0, reportName, config.getVerdictParallelism(), logger));
+        } else {
+            verdicts = verifySutsConcurrently(reportName, logger);
+        }
+        verdictFailed = verdicts.stream().mapToInt(verdict -> verdict.summary.getFailed()).sum();
 
-                // testMunitionDetonationIntegrityParameters
-                boolean fadMunitionDetonationPassesTest = new MunitionDetonationEqualUtils(spatialThresold).areMunitionDetonationParametersEquals(fadMunitionDetonation, optionalMunitionDetonation.get());
-                if (!fadMunitionDetonationPassesTest) {
-                    testPassed = false;
-                    failedMessage = "FAIL: MunitionDetonation Interaction from FAD with identifier " + fadMunitionDetonation.getEventIdentifier()
-                            + " has not the same parameters as its discovered MunitionDetonation match";
-                    failedStringBuilder.append("\n"+failedMessage);
-                } else {
-                    debugStringBuilder.append("OKAY: MunitionDetonation from FAD with identifier " + fadMunitionDetonation.getEventIdentifier()
-                            + " found an ID and type match in discovered MunitionDetonations");
+        List<SutVerdict> failedVerdicts = new ArrayList<>();
+        for (SutVerdict verdict : verdicts) {
+            if (!verdict.summary.isPassed()) {
+                failedVerdicts.add(verdict);
+            }
+        }
+        if (!failedVerdicts.isEmpty()) {
+            StringBuilder failedStringBuilder = new StringBuilder("Test failed due to errors in Munition Detonation Interaction(s) or absent/unrecognized Munition Detonation Interaction(s): ");
+            if (suts.size() > 1) {
+                failedStringBuilder.append(failedVerdicts.size()).append(" of ").append(suts.size()).append(" SuTs failed. ");
+            }
+            for (SutVerdict verdict : failedVerdicts) {
+                appendFailure(failedStringBuilder, verdict);
+            }
+            throw new TcFailed(failedStringBuilder.toString().trim());
+        } else {
+            logger.info("{} TEST IS COMPLETED SUCCESFULLY. {}", LINE_SEPARATOR, LINE_SEPARATOR);
+        }
+    }
 
-                }
+    /**
+     * Give each SuT its own verdict, sharing the verdict threads between them.
+     */
+    private List<SutVerdict> verifySutsConcurrently(String reportName, Logger logger) throws TcInconclusive {
+        int parallelism = config.getVerdictParallelism() > 0
+                ? config.getVerdictParallelism() : Runtime.getRuntime().availableProcessors();
+        int threads = Math.min(parallelism, suts.size());
+        int parallelismPerSut = Math.max(1, parallelism / suts.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SutVerdict>> futures = new ArrayList<>();
+            for (int i = 0; i < suts.size(); i++) {
+                int sut = i;
+                futures.add(executor.submit(() -> verifySut(sut, reportName + "_" + sutNames.get(sut), parallelismPerSut, logger)));
+            }
+            List<SutVerdict> verdicts = new ArrayList<>();
+            for (Future<SutVerdict> future : futures) {
+                verdicts.add(future.get());
+            }
+            return verdicts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TcInconclusive("Interrupted while comparing munition detonations", e);
+        } catch (ExecutionException e) {
+            throw new TcInconclusive("Could not compare the munition detonations", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                boolean fadDetonationLocationPassesTest = new MunitionDetonationEqualUtils(spatialThresold).worldLocationEquals(
-                        fadMunitionDetonation.getDetonationLocation(),
-                        optionalMunitionDetonation.get().getDetonationLocation());
+    /**
+     * Compare the munition detonations of one SuT with its FAD, then write and log its verdict.
+     */
+    private SutVerdict verifySut(int sut, String reportName, int parallelism, Logger logger) throws TcInconclusive {
+        MunitionDetonationMatcher matcher = suts.get(sut);
+        String sutName = sutNames.get(sut);
+        String logPrefix = sutName.isEmpty() ? "" : "SuT " + sutName + ": ";
+        // The deviations are recorded while comparing, so that each match is only decoded once
+        DeviationStatistics statistics = config.isDeviationStatistics() ? new DeviationStatistics(spatialThresold) : null;
+        List<DetonationCheckResult> results;
+        try {
+            results = new MunitionDetonationComparator(spatialThresold, config.isPrimitiveSpatialCheck())
+                    .compareAll(matcher.getFad(), matcher::getMatch, parallelism, statistics);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TcInconclusive("Interrupted while comparing munition detonations", e);
+        }
 
-                //This part overwrites the decision made by the equalCheck of the MunitionDetonationEqualUtils class.
-                boolean fadFinalVelocityPassesTest = new MunitionDetonationEqualUtils(spatialThresold).velocityEquals(
-                        fadMunitionDetonation.getFinalVelocityVector(),
-                        optionalMunitionDetonation.get().getFinalVelocityVector());
+        VerdictSummary summary = new VerdictSummary(matcher.getFad().size(), matcher.getReceivedCount());
+        results.forEach(summary::add);
+        Path reportFile = writeVerdictReport(results, reportName, logger);
+        if (statistics != null) {
+            writeDeviationStatistics(statistics, reportName, logger);
+        }
 
-                if (fadFinalVelocityPassesTest == false) {
-                    logger.warn("WARNING! MunitionDetonation Velocities do not match!");
-                    logger.warn("This can be due to either a faulty SuT or a difference between DIS coordinates and the vcsutilities libraries used. This failure has however not affected the official outcome of this TestSuite.");
-                    fadFinalVelocityPassesTest = true;
-                }
+        logger.info("{}Verdict: {}", logPrefix, summary);
+        if (summary.getVelocityMismatch() > 0) {
+            logger.warn("{}WARNING! {} MunitionDetonation Velocities do not match!", logPrefix, summary.getVelocityMismatch());
+            logger.warn("This can be due to either a faulty SuT or a difference between DIS coordinates and the vcsutilities libraries used. This failure has however not affected the official outcome of this TestSuite.");
+        }
+        return new SutVerdict(sutName, summary, reportFile);
+    }
 
-                boolean fadRelativePassesTest = new MunitionDetonationEqualUtils(spatialThresold).relativePositionEquals(
-                        fadMunitionDetonation.getRelativeDetonationLocation(),
-                        optionalMunitionDetonation.get().getRelativeDetonationLocation());
+    private static void appendFailure(StringBuilder failedStringBuilder, SutVerdict verdict) {
+        VerdictSummary summary = verdict.summary;
+        if (!verdict.name.isEmpty()) {
+            failedStringBuilder.append("SuT ").append(verdict.name).append(": ");
+        }
+        if (summary.getFadSize() != summary.getReceivedCount()) {
+            failedStringBuilder.append("Fad and discovered munitionDetonation sizes do not match ")
+                    .append(summary.getFadSize()).append(" | ").append(summary.getReceivedCount()).append(". ");
+        }
+        failedStringBuilder.append(summary.getFailed()).append(" of ").append(summary.getFadSize())
+                .append(" FAD entries failed (missing: ").append(summary.getMissing())
+                .append(", wrong parameters: ").append(summary.getParametersFailed())
+                .append(", wrong spatial info: ").append(summary.getSpatialFailed()).append(").");
+        if (verdict.reportFile != null) {
+            failedStringBuilder.append(" Details in ").append(verdict.reportFile);
+        }
+        failedStringBuilder.append(' ');
+    }
 
-                if (!(fadDetonationLocationPassesTest&&fadFinalVelocityPassesTest&&fadRelativePassesTest) ){
-                    testPassed = false;
-                    failedMessage = "FAIL: MunitionDetonation from FAD with identifier " + fadMunitionDetonation.getEventIdentifier()
-                            + " has not the same spatial info as its discovered MunitionDetonation";
-                    failedStringBuilder.append("\n"+failedMessage+lineSeparator);
-                } else {
-                    debugStringBuilder.append("OKAY: MunitionDetonation from FAD with identifier " + fadMunitionDetonation.getEventIdentifier()
-                            + " found an ID and spatial match in discovered MunitionDetonations");
-                }
+    /**
+     * Write the result of each FAD entry to the verdict report.
+     *
+     * @return the report file, or null if it could not be written
+     */
+    private Path writeVerdictReport(List<DetonationCheckResult> results, String reportName, Logger logger) {
+        Path reportFile = config.getReportDirectory().resolve(reportName + ".jsonl");
+        try (VerdictReportWriter reportWriter = new VerdictReportWriter(reportFile, spatialThresold)) {
+            for (DetonationCheckResult result : results) {
+                reportWriter.write(result);
             }
+        } catch (IOException e) {
+            logger.error("Could not write the verdict report {}", reportFile, e);
+            return null;
         }
-        logger.debug(debugStringBuilder.toString());
-        if (!testPassed) {
-            throw new TcFailed("Test failed due to errors in Munition Detonation Interaction(s) or absent/unrecognized Weapon Fire Interaction(s) : "+failedStringBuilder.toString()) ;
-        } else {
-            logger.info("{} TEST IS COMPLETED SUCCESFULLY. {}",lineSeparator,lineSeparator);
+        logger.info("Verdict report written to {}", reportFile);
+        return reportFile;
+    }
+
+    /**
+     * Log the loss, reordering and jitter of the SuT links and write the arrivals of each FAD event.
+     */
+    private void writeArrivalAnalysis(String reportName, Logger logger) {
+        arrivals.analyse();
+        arrivals.log(logger);
+
+        Path arrivalsFile = config.getReportDirectory().resolve(reportName + "_arrivals.jsonl");
+        try {
+            arrivals.writeJsonLines(arrivalsFile);
+            logger.info("Arrival analysis written to {}", arrivalsFile);
+        } catch (IOException e) {
+            logger.error("Could not write the arrival analysis {}", arrivalsFile, e);
+        }
+    }
+
+    /**
+     * Log the distribution of the deviation of each spatial field and write its histogram.
+     */
+    private void writeDeviationStatistics(DeviationStatistics statistics, String reportName, Logger logger) {
+        statistics.log(logger);
+
+        Path statisticsFile = config.getReportDirectory().resolve(reportName + "_deviations.json");
+        try {
+            statistics.writeJson(statisticsFile);
+            logger.info("Deviation histograms written to {}", statisticsFile);
+        } catch (IOException e) {
+            logger.error("Could not write the deviation histograms {}", statisticsFile, e);
         }
     }
 
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArrivalAnalyzerTest {
+
+    private static final double UNITS_PER_MILLISECOND = (1L << 31) / 3_600_000.0;
+    private static final long PERIOD_MILLIS = 6000;
+
+    private final long[] keys = new long[10];
+    private final List<MunitionDetonation> fad = Arrays.asList(new MunitionDetonation[keys.length]);
+
+    public ArrivalAnalyzerTest() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = DetonationPduLayout.eventKey(1, 2, i + 1);
+        }
+    }
+
+    /**
+     * @return the DIS timestamp of a send, in milliseconds past the hour
+     */
+    private static int timestamp(long millisPastHour) {
+        long units = (long) ((millisPastHour % 3_600_000L) * UNITS_PER_MILLISECOND);
+        return (int) (units << 1);
+    }
+
+    /**
+     * Send every event once per period, starting a few seconds before the hour so that the
+     * timestamps wrap.
+     */
+    private ArrivalAnalyzer sendPeriods(int periods, int lostEvent, int lostPeriod) {
+        ArrivalAnalyzer analyzer = new ArrivalAnalyzer(fad, keys);
+        long start = 3_600_000L - 20_000L;
+        for (int period = 0; period < periods; period++) {
+            for (int event = 0; event < keys.length; event++) {
+                if (event == lostEvent && period == lostPeriod) {
+                    continue;
+                }
+                long sent = start + period * PERIOD_MILLIS + event * 100L;
+                analyzer.record(keys[event], timestamp(sent), TimeUnit.MILLISECONDS.toNanos(sent + 5));
+            }
+        }
+        analyzer.analyse();
+        return analyzer;
+    }
+
+    @Test
+    public void noLossAcrossTheHour() {
+        ArrivalAnalyzer analyzer = sendPeriods(10, -1, -1);
+        assertEquals(0, analyzer.getLossRate(), 0);
+        assertEquals(0, analyzer.getReorderedCount());
+        assertEquals(0, analyzer.getJitterMillis(), 0.01);
+        for (int event = 0; event < keys.length; event++) {
+            assertEquals(10, analyzer.getArrivals(event));
+            assertEquals(10, analyzer.getExpected(event));
+        }
+    }
+
+    @Test
+    public void gapsAreCountedAsLost() {
+        ArrivalAnalyzer analyzer = sendPeriods(10, 3, 4);
+        assertEquals(9, analyzer.getArrivals(3));
+        assertEquals(10, analyzer.getExpected(3));
+        assertEquals(1.0 / 100, analyzer.getLossRate(), 1e-12);
+    }
+
+    @Test
+    public void lossesAtTheEdgesAreCountedFromTheLinkSpan() {
+        ArrivalAnalyzer first = sendPeriods(10, 5, 0);
+        assertEquals(10, first.getExpected(5));
+        ArrivalAnalyzer last = sendPeriods(10, 5, 9);
+        assertEquals(10, last.getExpected(5));
+    }
+
+    @Test
+    public void repeatedTimestampsAreDuplicates() {
+        ArrivalAnalyzer analyzer = new ArrivalAnalyzer(fad, keys);
+        for (long sent = 0; sent < 5 * PERIOD_MILLIS; sent += PERIOD_MILLIS) {
+            long arrival = TimeUnit.MILLISECONDS.toNanos(sent);
+            analyzer.record(keys[0], timestamp(sent), arrival);
+            analyzer.record(keys[0], timestamp(sent), arrival + 1000);
+        }
+        analyzer.analyse();
+        assertEquals(5, analyzer.getArrivals(0));
+        assertEquals(5, analyzer.getDuplicates(0));
+        assertEquals(5, analyzer.getExpected(0));
+    }
+
+    @Test
+    public void earlierSendsAreReordered() {
+        ArrivalAnalyzer analyzer = new ArrivalAnalyzer(fad, keys);
+        analyzer.record(keys[0], timestamp(1000), TimeUnit.MILLISECONDS.toNanos(1000));
+        analyzer.record(keys[2], timestamp(1200), TimeUnit.MILLISECONDS.toNanos(1201));
+        analyzer.record(keys[1], timestamp(1100), TimeUnit.MILLISECONDS.toNanos(1202));
+        assertEquals(1, analyzer.getReorderedCount());
+        assertTrue(analyzer.getJitterMillis() > 0);
+    }
+
+    @Test
+    public void foreignEventsAreIgnored() {
+        ArrivalAnalyzer analyzer = new ArrivalAnalyzer(fad, keys);
+        analyzer.record(DetonationPduLayout.eventKey(9, 9, 9), timestamp(0), 0);
+        assertEquals(0, analyzer.getArrivalCount());
+    }
+
+    @Test
+    public void eventsReceivedOnceUseTheIntervalOfTheirLink() {
+        ArrivalAnalyzer analyzer = new ArrivalAnalyzer(fad, keys);
+        for (int period = 0; period < 4; period++) {
+            long sent = period * PERIOD_MILLIS;
+            analyzer.record(keys[0], timestamp(sent), TimeUnit.MILLISECONDS.toNanos(sent));
+        }
+        analyzer.record(keys[1], timestamp(100), TimeUnit.MILLISECONDS.toNanos(100));
+        analyzer.analyse();
+        assertEquals(4, analyzer.getExpected(0));
+        assertEquals(3, analyzer.getExpected(1));
+    }
+}
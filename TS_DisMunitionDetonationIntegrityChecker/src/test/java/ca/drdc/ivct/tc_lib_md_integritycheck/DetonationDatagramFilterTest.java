@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DetonationDatagramFilterTest {
+
+    private static final int EXERCISE_ID = 7;
+    private static final int ENTITY_STATE_PDU_TYPE = 1;
+
+    private final long fadKey = DetonationPduLayout.eventKey(1, 2, 3);
+    private final MunitionDetonationMatcher matcher = new MunitionDetonationMatcher(
+            Arrays.asList(new MunitionDetonation[1]), new long[] { fadKey },
+            new DetonationCapture(Long.MAX_VALUE, null), new LatencyHistogram(), new LatencyHistogram());
+    private final DetonationDatagramFilter filter = new DetonationDatagramFilter(matcher, EXERCISE_ID);
+
+    private static ByteBuffer datagram(int pduType, int exerciseId, long eventKey) {
+        ByteBuffer datagram = ByteBuffer.allocate(DetonationPduLayout.MINIMUM_LENGTH);
+        datagram.put(DetonationPduLayout.EXERCISE_ID_OFFSET, (byte) exerciseId);
+        datagram.put(DetonationPduLayout.PDU_TYPE_OFFSET, (byte) pduType);
+        datagram.putShort(DetonationPduLayout.EVENT_SITE_OFFSET, (short) (eventKey >>> 32));
+        datagram.putShort(DetonationPduLayout.EVENT_APPLICATION_OFFSET, (short) (eventKey >>> 16));
+        datagram.putShort(DetonationPduLayout.EVENT_NUMBER_OFFSET, (short) eventKey);
+        return datagram;
+    }
+
+    @Test
+    public void onlyDetonationsOfTheExerciseAreCounted() {
+        assertFalse(filter.accept(datagram(ENTITY_STATE_PDU_TYPE, EXERCISE_ID, fadKey)));
+        assertTrue(filter.accept(datagram(DetonationPduLayout.DETONATION_PDU_TYPE, EXERCISE_ID + 1, fadKey)));
+        assertEquals(2, filter.getDatagramCount());
+        assertEquals(0, filter.getExerciseDetonationCount());
+        assertEquals(0, matcher.getReceivedCount());
+
+        assertTrue(filter.accept(datagram(DetonationPduLayout.DETONATION_PDU_TYPE, EXERCISE_ID, fadKey)));
+        assertTrue(filter.accept(datagram(DetonationPduLayout.DETONATION_PDU_TYPE, EXERCISE_ID, fadKey)));
+        assertEquals(4, filter.getDatagramCount());
+        assertEquals(2, filter.getExerciseDetonationCount());
+        assertEquals(1, matcher.getMatchedCount());
+        assertEquals(1, matcher.getDuplicateCount());
+    }
+
+    @Test
+    public void truncatedDetonationsAreDropped() {
+        ByteBuffer datagram = datagram(DetonationPduLayout.DETONATION_PDU_TYPE, EXERCISE_ID, fadKey);
+        datagram.limit(DetonationPduLayout.MINIMUM_LENGTH - 1);
+        assertFalse(filter.accept(datagram));
+        assertEquals(0, filter.getExerciseDetonationCount());
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeviationHistogramTest {
+
+    @Test
+    public void valuesBelowTheMinimumGoToTheFirstBucket() {
+        assertEquals(0, bucketOf(0));
+        assertEquals(0, bucketOf(DeviationHistogram.MIN_VALUE / 2));
+        assertEquals(1, bucketOf(DeviationHistogram.MIN_VALUE));
+    }
+
+    @Test
+    public void valuesFromTheMaximumGoToTheLastBucket() {
+        int last = new DeviationHistogram(Double.NaN).getBucketCount() - 1;
+        assertEquals(last, bucketOf(DeviationHistogram.MAX_VALUE));
+        assertEquals(last, bucketOf(Double.POSITIVE_INFINITY));
+        assertEquals(Double.POSITIVE_INFINITY, DeviationHistogram.upperBound(last), 0);
+        assertTrue(bucketOf(Math.nextDown(DeviationHistogram.MAX_VALUE)) < last);
+    }
+
+    @Test
+    public void eachValueIsBelowTheUpperBoundOfItsBucket() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10_000; i++) {
+            double value = Math.pow(10, -9 + 15 * random.nextDouble());
+            int bucket = bucketOf(value);
+            assertTrue(value + " above the bound of bucket " + bucket, value < DeviationHistogram.upperBound(bucket));
+            assertTrue(value + " below the bound of bucket " + (bucket - 1),
+                    value >= DeviationHistogram.upperBound(bucket - 1) * (1 - 1e-12));
+        }
+    }
+
+    @Test
+    public void bucketsSplitEachDecade() {
+        double ratio = DeviationHistogram.upperBound(11) / DeviationHistogram.upperBound(10);
+        assertEquals(Math.pow(10, 1.0 / DeviationHistogram.BUCKETS_PER_DECADE), ratio, 1e-9);
+    }
+
+    @Test
+    public void nanIsIgnoredAndSignIsDropped() {
+        DeviationHistogram histogram = new DeviationHistogram(0.5);
+        histogram.record(Double.NaN);
+        histogram.record(-1);
+        histogram.record(0.25);
+        assertEquals(2, histogram.getCount());
+        assertEquals(1, histogram.getAboveThreshold());
+        assertEquals(1, histogram.getMax(), 0);
+        assertEquals(0.625, histogram.getMean(), 1e-12);
+    }
+
+    @Test
+    public void percentilesAreCappedByTheMaximum() {
+        DeviationHistogram histogram = new DeviationHistogram(Double.NaN);
+        assertTrue(Double.isNaN(histogram.getPercentile(50)));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        double p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 50 && p50 < 50 * Math.pow(10, 1.0 / DeviationHistogram.BUCKETS_PER_DECADE));
+        assertEquals(100, histogram.getPercentile(100), 0);
+    }
+
+    @Test
+    public void mergeAddsTheCounts() {
+        DeviationHistogram first = new DeviationHistogram(1);
+        DeviationHistogram second = new DeviationHistogram(1);
+        first.record(0.5);
+        second.record(2);
+        second.record(3);
+        first.merge(second);
+        assertEquals(3, first.getCount());
+        assertEquals(2, first.getAboveThreshold());
+        assertEquals(3, first.getMax(), 0);
+    }
+
+    private static int bucketOf(double value) {
+        DeviationHistogram histogram = new DeviationHistogram(Double.NaN);
+        histogram.record(value);
+        for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+            if (histogram.getBucket(bucket) > 0) {
+                return bucket;
+            }
+        }
+        throw new AssertionError("Nothing recorded");
+    }
+}
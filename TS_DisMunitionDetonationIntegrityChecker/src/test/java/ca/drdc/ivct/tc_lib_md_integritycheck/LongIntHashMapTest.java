@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void absentKeyIsMissing() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        assertEquals(LongIntHashMap.MISSING, map.get(42));
+        assertFalse(map.containsKey(0));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void putIfAbsentKeepsTheFirstValue() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        assertEquals(LongIntHashMap.MISSING, map.putIfAbsent(0, 7));
+        assertEquals(7, map.putIfAbsent(0, 8));
+        assertEquals(7, map.get(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void rehashKeepsEveryEntry() {
+        LongIntHashMap map = new LongIntHashMap(1);
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            assertEquals(LongIntHashMap.MISSING, map.putIfAbsent(key(i), i));
+        }
+        assertEquals(count, map.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, map.get(key(i)));
+        }
+        assertFalse(map.containsKey(key(count)));
+    }
+
+    @Test
+    public void collidingKeysAreProbed() {
+        // Keys differing only in their high bits share the low bits the slots are taken from without hashing
+        LongIntHashMap map = new LongIntHashMap(16);
+        for (int i = 0; i < 1000; i++) {
+            map.putIfAbsent((long) i << 40, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get((long) i << 40));
+        }
+    }
+
+    @Test
+    public void clearForgetsTheEntries() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        for (int i = 0; i < 100; i++) {
+            map.putIfAbsent(key(i), i);
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(key(1)));
+        assertEquals(LongIntHashMap.MISSING, map.putIfAbsent(key(1), 3));
+        assertTrue(map.containsKey(key(1)));
+    }
+
+    /**
+     * @return event keys of a few simulations, like the ones of a FAD
+     */
+    private static long key(int i) {
+        return (long) (i % 7) << 32 | (long) (i % 3) << 16 | i >>> 4;
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada,
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+
+package ca.drdc.ivct.tc_lib_md_integritycheck;
+
+import ca.drdc.ivct.dis.common.DetonationPduLayout;
+import ca.drdc.ivct.dis.common.metrics.LatencyHistogram;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MunitionDetonationMatcherTest {
+
+    /**
+     * @return the event keys of a FAD of the given size, spread over a few simulations
+     */
+    private static long[] fadKeys(int size) {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = DetonationPduLayout.eventKey(1 + i % 5, 1 + i / 65_536, i % 65_536);
+        }
+        return keys;
+    }
+
+    private static MunitionDetonationMatcher matcher(long[] fadKeys, DetonationCapture capture) {
+        List<MunitionDetonation> fad = Arrays.asList(new MunitionDetonation[fadKeys.length]);
+        return new MunitionDetonationMatcher(fad, fadKeys, capture, new LatencyHistogram(), new LatencyHistogram());
+    }
+
+    private static ByteBuffer encodedPdu(long eventKey) {
+        ByteBuffer pdu = ByteBuffer.allocate(DetonationPduLayout.MINIMUM_LENGTH);
+        pdu.put(DetonationPduLayout.PDU_TYPE_OFFSET, (byte) DetonationPduLayout.DETONATION_PDU_TYPE);
+        pdu.putShort(DetonationPduLayout.EVENT_SITE_OFFSET, (short) (eventKey >>> 32));
+        pdu.putShort(DetonationPduLayout.EVENT_APPLICATION_OFFSET, (short) (eventKey >>> 16));
+        pdu.putShort(DetonationPduLayout.EVENT_NUMBER_OFFSET, (short) eventKey);
+        return pdu;
+    }
+
+    /**
+     * Receive every FAD event in reverse order, each twice, and as many foreign events.
+     *
+     * @return the mean number of hash slots read per received PDU to admit it and look it up
+     */
+    private static double meanLookupProbes(int fadSize) {
+        long[] keys = fadKeys(fadSize);
+        DetonationCapture capture = new DetonationCapture(Long.MAX_VALUE, null);
+        MunitionDetonationMatcher matcher = matcher(keys, capture);
+        long probes = 0;
+        for (int repeat = 0; repeat < 2; repeat++) {
+            for (int i = keys.length - 1; i >= 0; i--) {
+                if (matcher.admit(keys[i])) {
+                    matcher.offer(keys[i], encodedPdu(keys[i]));
+                }
+                probes += matcher.lookupProbes(keys[i]);
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            long foreignKey = DetonationPduLayout.eventKey(100 + i % 5, 1 + i / 65_536, i % 65_536);
+            assertFalse(matcher.admit(foreignKey));
+            probes += matcher.lookupProbes(foreignKey);
+        }
+        assertTrue(matcher.isComplete());
+        for (int i = 0; i < keys.length; i++) {
+            assertNotNull(capture.get(matcher.getFadKey(i)));
+        }
+        return (double) probes / (3 * keys.length);
+    }
+
+    @Test
+    public void everyEventIsMatchedOnce() {
+        long[] keys = fadKeys(1000);
+        DetonationCapture capture = new DetonationCapture(Long.MAX_VALUE, null);
+        MunitionDetonationMatcher matcher = matcher(keys, capture);
+        for (long key : keys) {
+            assertTrue(matcher.admit(key));
+            assertTrue(matcher.offer(key, encodedPdu(key)));
+        }
+        assertFalse(matcher.admit(keys[0]));
+        assertFalse(matcher.admit(DetonationPduLayout.eventKey(9, 9, 9)));
+        assertFalse(matcher.admit(DetonationPduLayout.eventKey(9, 9, 9)));
+
+        assertTrue(matcher.isComplete());
+        assertEquals(keys.length, matcher.getMatchedCount());
+        assertEquals(1, matcher.getForeignCount());
+        assertEquals(keys.length + 1, matcher.getReceivedCount());
+        assertEquals(2, matcher.getDuplicateCount());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(keys[i], DetonationPduLayout.eventKey(capture.get(matcher.getFadKey(i))));
+        }
+    }
+
+    @Test
+    public void matchingScalesLinearly() {
+        // A keyed lookup reads about the same number of slots whatever the FAD size, so the
+        // work grows linearly; a scan of the received PDUs would read four times as many at 100k.
+        // The timing of the whole verdict phase is in the JMH VerdictBenchmark.
+        double small = meanLookupProbes(25_000);
+        double large = meanLookupProbes(100_000);
+        // Two lookups per PDU, in the FAD index and in the capture
+        assertTrue("25k events: " + small + " probes per PDU", small < 2 * 3);
+        assertTrue("100k events: " + large + " probes per PDU, 25k events: " + small, large < small * 1.25);
+    }
+}